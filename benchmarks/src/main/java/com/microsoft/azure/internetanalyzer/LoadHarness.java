@@ -0,0 +1,343 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Runs InternetAnalyzerClient.execute against a LoadTestServer at a fixed concurrency and prints throughput, run time
+ * percentiles and the allocation rate of the client threads. Options are passed as --name=value, see usage().
+ */
+public final class LoadHarness {
+
+    private static final String keyAlias = "load-test";
+    private static final String keyPassword = "load-test";
+
+    private final int concurrency;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final InternetAnalyzerClient client;
+    private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private volatile long measureStart;
+    private volatile long measureEnd;
+
+    LoadHarness(int concurrency, long warmupNanos, long durationNanos, InternetAnalyzerClient client) {
+        this.concurrency = concurrency;
+        this.warmupNanos = warmupNanos;
+        this.durationNanos = durationNanos;
+        this.client = client;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null) {
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        int concurrency = intOption(options, "concurrency", 8);
+        int warmupSeconds = intOption(options, "warmup", 5);
+        int durationSeconds = intOption(options, "duration", 30);
+        int latencyMillis = intOption(options, "latency", 0);
+        int jitterMillis = intOption(options, "jitter", 0);
+        int redirects = intOption(options, "redirects", 0);
+        int endpointCount = intOption(options, "endpoints", 3);
+        int configMaxAgeSeconds = intOption(options, "config-max-age", 0);
+        boolean tls = Boolean.parseBoolean(options.getOrDefault("tls", "false"));
+        ReportUploadMode reportUploadMode = ReportUploadMode.valueOf(options.getOrDefault("upload", ReportUploadMode.GET.name()).toUpperCase(Locale.ROOT));
+        if (concurrency <= 0 || durationSeconds <= 0 || warmupSeconds < 0) {
+            throw new IllegalArgumentException("concurrency and duration must be positive and warmup cannot be negative.");
+        }
+
+        SSLContext sslContext = tls ? createSslContext(options.get("keystore"), options.getOrDefault("storepass", keyPassword)) : null;
+        SocketHttpTransport transport = sslContext != null
+                ? new SocketHttpTransport(5000, 10000, sslContext.getSocketFactory(), null)
+                : new SocketHttpTransport(5000, 10000);
+
+        try (LoadTestServer server = new LoadTestServer(latencyMillis, jitterMillis, redirects, endpointCount, configMaxAgeSeconds, sslContext)) {
+            InternetAnalyzerClient client = InternetAnalyzerClient.builder()
+                    .configUrls(server.getConfigUrl())
+                    .reportUploadPrefix(server.getScheme() + "://")
+                    .httpTransport(transport)
+                    .measurementHttpTransport(transport)
+                    .reportUploadMode(reportUploadMode)
+                    .build();
+            System.out.printf(Locale.ROOT, "concurrency=%d warmup=%ds duration=%ds latency=%dms jitter=%dms redirects=%d endpoints=%d config-max-age=%ds tls=%b upload=%s%n",
+                    concurrency, warmupSeconds, durationSeconds, latencyMillis, jitterMillis, redirects, endpointCount, configMaxAgeSeconds, tls, reportUploadMode);
+
+            long requestsBefore = server.getRequestCount();
+            Result result = new LoadHarness(concurrency, TimeUnit.SECONDS.toNanos(warmupSeconds), TimeUnit.SECONDS.toNanos(durationSeconds), client).run();
+            result.print();
+            System.out.printf(Locale.ROOT, "server requests: %d%n", server.getRequestCount() - requestsBefore);
+        }
+    }
+
+    Result run() throws InterruptedException {
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("Thread allocation accounting is not supported by this JVM.");
+        }
+
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        Worker[] workers = new Worker[concurrency];
+        CountDownLatch ready = new CountDownLatch(concurrency);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Worker(ready, start);
+            workers[i].setName("load-harness-" + i);
+            workers[i].start();
+        }
+
+        ready.await();
+        long now = System.nanoTime();
+        measureStart = now + warmupNanos;
+        measureEnd = measureStart + durationNanos;
+        start.countDown();
+        for (Worker worker : workers) {
+            worker.join();
+        }
+
+        return new Result(workers, durationNanos);
+    }
+
+    private final class Worker extends Thread {
+        private final CountDownLatch ready;
+        private final CountDownLatch start;
+
+        private long[] runNanos = new long[1024];
+        private int runs;
+        private int errors;
+        private long allocatedBytes;
+        private Throwable firstError;
+
+        Worker(CountDownLatch ready, CountDownLatch start) {
+            this.ready = ready;
+            this.start = start;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            ready.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException ex) {
+                return;
+            }
+
+            long threadId = getId();
+            long allocatedAtStart = -1;
+            long runStart = System.nanoTime();
+            while (runStart < measureEnd) {
+                boolean measured = runStart >= measureStart;
+                if (measured && allocatedAtStart < 0) {
+                    allocatedAtStart = threadBean.getThreadAllocatedBytes(threadId);
+                }
+
+                boolean failed = false;
+                try {
+                    client.execute("LOAD-HARNESS", "load");
+                } catch (Exception ex) {
+                    failed = true;
+                    if (measured && firstError == null) {
+                        firstError = ex;
+                    }
+                }
+
+                long runEnd = System.nanoTime();
+                if (measured) {
+                    if (failed) {
+                        errors++;
+                    } else {
+                        record(runEnd - runStart);
+                    }
+                }
+
+                runStart = runEnd;
+            }
+
+            if (allocatedAtStart >= 0) {
+                allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedAtStart;
+            }
+        }
+
+        private void record(long nanos) {
+            if (runs == runNanos.length) {
+                runNanos = Arrays.copyOf(runNanos, runs * 2);
+            }
+
+            runNanos[runs++] = nanos;
+        }
+    }
+
+    static final class Result {
+        final int runs;
+        final int errors;
+        final double throughputPerSecond;
+        final long p50Nanos;
+        final long p99Nanos;
+        final long maxNanos;
+        final double allocatedBytesPerSecond;
+        final double allocatedBytesPerRun;
+        final Throwable firstError;
+
+        private Result(Worker[] workers, long durationNanos) {
+            int runs = 0;
+            int errors = 0;
+            long allocatedBytes = 0;
+            Throwable firstError = null;
+            for (Worker worker : workers) {
+                runs += worker.runs;
+                errors += worker.errors;
+                allocatedBytes += worker.allocatedBytes;
+                if (firstError == null) {
+                    firstError = worker.firstError;
+                }
+            }
+
+            long[] runNanos = new long[runs];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.runNanos, 0, runNanos, offset, worker.runs);
+                offset += worker.runs;
+            }
+
+            Arrays.sort(runNanos);
+            double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            this.runs = runs;
+            this.errors = errors;
+            this.throughputPerSecond = runs / seconds;
+            this.p50Nanos = percentile(runNanos, 0.50);
+            this.p99Nanos = percentile(runNanos, 0.99);
+            this.maxNanos = runs > 0 ? runNanos[runs - 1] : 0;
+            this.allocatedBytesPerSecond = allocatedBytes / seconds;
+            this.allocatedBytesPerRun = runs + errors > 0 ? allocatedBytes / (double) (runs + errors) : 0;
+            this.firstError = firstError;
+        }
+
+        void print() {
+            System.out.printf(Locale.ROOT, "runs: %d (errors %d), throughput: %.1f runs/s%n", runs, errors, throughputPerSecond);
+            System.out.printf(Locale.ROOT, "run time: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", p50Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+            System.out.printf(Locale.ROOT, "allocation: %.1f MB/s, %.1f KB/run (client threads)%n", allocatedBytesPerSecond / (1024 * 1024), allocatedBytesPerRun / 1024);
+            if (firstError != null) {
+                System.out.println("first error: " + firstError);
+            }
+        }
+
+        // nearest-rank percentile of sorted values
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    /*
+     * Server and client share one key store: the server presents its key pair and the client trusts the same
+     * certificate. Without --keystore a throwaway self-signed key pair for 127.0.0.1 is generated with keytool.
+     */
+    private static SSLContext createSslContext(String keyStorePath, String storePassword) throws IOException, GeneralSecurityException, InterruptedException {
+        File keyStoreFile = keyStorePath != null ? new File(keyStorePath) : generateKeyStore(storePassword);
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream in = new FileInputStream(keyStoreFile)) {
+            keyStore.load(in, storePassword.toCharArray());
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, storePassword.toCharArray());
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    private static File generateKeyStore(String storePassword) throws IOException, InterruptedException {
+        File keyStoreFile = File.createTempFile("load-harness", ".jks");
+        if (!keyStoreFile.delete()) {
+            throw new IOException("Could not prepare " + keyStoreFile);
+        }
+
+        keyStoreFile.deleteOnExit();
+
+        // java.home is the jre directory on Java 8 and the jdk directory afterwards
+        File keytool = new File(System.getProperty("java.home"), "bin/keytool");
+        if (!keytool.isFile()) {
+            keytool = new File(System.getProperty("java.home"), "../bin/keytool");
+        }
+
+        Process process = new ProcessBuilder(keytool.getPath(), "-genkeypair", "-noprompt",
+                "-alias", keyAlias, "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+                "-dname", "CN=" + LoadTestServer.host, "-ext", "SAN=ip:" + LoadTestServer.host + ",dns:localhost",
+                "-storetype", KeyStore.getDefaultType(), "-keystore", keyStoreFile.getPath(),
+                "-storepass", storePassword, "-keypass", storePassword)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool could not generate " + keyStoreFile);
+        }
+
+        return keyStoreFile;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                return null;
+            }
+
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static void usage() {
+        System.err.println("usage: LoadHarness [--name=value ...]");
+        System.err.println("  --concurrency=8       client threads calling execute");
+        System.err.println("  --warmup=5            seconds before measuring");
+        System.err.println("  --duration=30         measured seconds");
+        System.err.println("  --latency=0           server delay per request in milliseconds");
+        System.err.println("  --jitter=0            uniform +/- jitter on the delay in milliseconds");
+        System.err.println("  --redirects=0         302 hops in front of each measurement object (followed over http and https)");
+        System.err.println("  --endpoints=3         measurement endpoints per run");
+        System.err.println("  --config-max-age=0    Cache-Control max-age of the configuration in seconds");
+        System.err.println("  --tls=false           serve everything over https");
+        System.err.println("  --keystore=<path>     key store for --tls, generated with keytool when omitted");
+        System.err.println("  --storepass=load-test key store password");
+        System.err.println("  --upload=GET          report upload mode: GET, POST_GZIP or POST_DEFLATE");
+    }
+}
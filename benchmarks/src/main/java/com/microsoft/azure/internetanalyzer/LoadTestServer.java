@@ -0,0 +1,226 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Local stand-in for the configuration, measurement and report hosts, built on the JDK HttpServer. Every request is
+ * delayed by latency +/- jitter, measurement objects sit behind a chain of 302 redirects and the server speaks TLS
+ * when given an SSLContext.
+ */
+final class LoadTestServer implements Closeable {
+
+    static final String host = "127.0.0.1";
+
+    private static final String configPath = "/config";
+    private static final String redirectPath = "/hop/";
+    private static final String reportPath = "/report/";
+    private static final int backlog = 1024;
+
+    // 1x1 transparent gif, the same object the measurement endpoints serve
+    private static final byte[] transparentGif = {
+            0x47, 0x49, 0x46, 0x38, 0x39, 0x61, 0x01, 0x00, 0x01, 0x00, (byte) 0x80, 0x00, 0x00, (byte) 0xff, (byte) 0xff,
+            (byte) 0xff, 0x00, 0x00, 0x00, 0x21, (byte) 0xf9, 0x04, 0x01, 0x00, 0x00, 0x00, 0x00, 0x2c, 0x00, 0x00, 0x00,
+            0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x02, 0x02, 0x44, 0x01, 0x00, 0x3b};
+
+    static {
+        // the JDK server writes headers and body separately; with Nagle on, delayed ACKs add ~40ms to every response
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final int latencyMillis;
+    private final int jitterMillis;
+    private final int redirects;
+    private final int endpointCount;
+    private final int configMaxAgeSeconds;
+    private final boolean secure;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    LoadTestServer(int latencyMillis, int jitterMillis, int redirects, int endpointCount, int configMaxAgeSeconds, SSLContext sslContext) throws IOException {
+        if (latencyMillis < 0 || jitterMillis < 0 || redirects < 0 || endpointCount <= 0 || configMaxAgeSeconds < 0) {
+            throw new IllegalArgumentException("latency, jitter, redirects and config max-age cannot be negative and endpointCount must be positive.");
+        }
+
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.redirects = redirects;
+        this.endpointCount = endpointCount;
+        this.configMaxAgeSeconds = configMaxAgeSeconds;
+        this.secure = sslContext != null;
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(host), 0);
+        if (secure) {
+            HttpsServer httpsServer = HttpsServer.create(address, backlog);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            this.server = httpsServer;
+        } else {
+            this.server = HttpServer.create(address, backlog);
+        }
+
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "load-test-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.createContext(configPath, this::handleConfig);
+        server.createContext(redirectPath, this::handleMeasurement);
+        server.createContext(reportPath, this::handleReport);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getScheme() {
+        return secure ? "https" : "http";
+    }
+
+    String getOrigin() {
+        return host + ":" + server.getAddress().getPort();
+    }
+
+    String getConfigUrl() {
+        return getScheme() + "://" + getOrigin() + configPath;
+    }
+
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleConfig(HttpExchange exchange) throws IOException {
+        delay();
+        byte[] body;
+        try {
+            body = createConfiguration().toString().getBytes(StandardCharsets.UTF_8);
+        } catch (JSONException ex) {
+            throw new IOException(ex);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (configMaxAgeSeconds > 0) {
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=" + configMaxAgeSeconds);
+        }
+
+        respond(exchange, 200, body);
+    }
+
+    /*
+     * /hop/{n}/trans.gif redirects to /hop/{n-1}/trans.gif until n reaches 0, which serves the gif.
+     */
+    private void handleMeasurement(HttpExchange exchange) throws IOException {
+        delay();
+        String path = exchange.getRequestURI().getRawPath();
+        int hopEnd = path.indexOf('/', redirectPath.length());
+        int hops;
+        try {
+            hops = Integer.parseInt(path.substring(redirectPath.length(), hopEnd < 0 ? path.length() : hopEnd));
+        } catch (NumberFormatException ex) {
+            respond(exchange, 404, new byte[0]);
+            return;
+        }
+
+        if (hops > 0 && hopEnd >= 0) {
+            String query = exchange.getRequestURI().getRawQuery();
+            String location = getScheme() + "://" + getOrigin() + redirectPath + (hops - 1) + path.substring(hopEnd) + (query != null ? "?" + query : "");
+            exchange.getResponseHeaders().set("Location", location);
+            respond(exchange, 302, new byte[0]);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "image/gif");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        respond(exchange, 200, transparentGif);
+    }
+
+    private void handleReport(HttpExchange exchange) throws IOException {
+        delay();
+        exchange.getResponseHeaders().set("Content-Type", "image/gif");
+        respond(exchange, 200, transparentGif);
+    }
+
+    private JSONObject createConfiguration() throws JSONException {
+        int measurementType = secure ? MeasurementTypes.HTTPS : MeasurementTypes.HTTP;
+        JSONArray endpoints = new JSONArray();
+        for (int i = 0; i < endpointCount; i++) {
+            JSONObject endpoint = new JSONObject();
+            endpoint.put("e", getOrigin());
+            endpoint.put("w", 1);
+            endpoint.put("m", measurementType);
+            endpoint.put("o", redirectPath + redirects + "/e" + i + "/trans.gif");
+            endpoints.put(endpoint);
+        }
+
+        JSONObject configuration = new JSONObject();
+        configuration.put("s", 5000);
+        configuration.put("n", endpointCount);
+        configuration.put("e", endpoints);
+        configuration.put("r", new JSONArray().put(getOrigin() + reportPath + "r.gif"));
+        return configuration;
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        requestCount.incrementAndGet();
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            while (requestBody.read(buffer) != -1) {
+                // the request body has to be consumed for the connection to be kept alive
+            }
+        }
+
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private void delay() throws IOException {
+        long delayMillis = latencyMillis;
+        if (jitterMillis > 0) {
+            delayMillis += ThreadLocalRandom.current().nextInt(-jitterMillis, jitterMillis + 1);
+        }
+
+        if (delayMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while delaying the response.", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measurement side hot paths that don't touch the network: weighted endpoint selection, fetch url generation and
+ * draining response bodies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SelectionState {
+        @Param({"10", "100", "1000"})
+        public int endpointCount;
+
+        MeasurementAgent measurementAgent;
+
+        @Setup
+        public void setup() throws JSONException {
+            Random random = new Random(17);
+            JSONArray endpoints = new JSONArray();
+            for (int i = 0; i < endpointCount; i++) {
+                JSONObject endpoint = new JSONObject();
+                endpoint.put("e", "*.endpoint" + i + ".fp.measure.office.com");
+                endpoint.put("w", 1 + random.nextInt(100));
+                endpoint.put("m", MeasurementTypes.HTTPS);
+                endpoints.put(endpoint);
+            }
+
+            JSONObject configuration = new JSONObject();
+            configuration.put("n", Math.max(1, endpointCount / 2));
+            configuration.put("r", new JSONArray().put("localhost/report/r.gif"));
+            configuration.put("e", endpoints);
+            measurementAgent = new MeasurementAgent(new MeasurementConfiguration(configuration), new MeasurementContext(), new Random(42));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FetchUrlState {
+        FetchMeasurement.FetchUrl wildcardFetchUrl;
+        FetchMeasurement.FetchUrl plainFetchUrl;
+
+        @Setup
+        public void setup() {
+            FetchMeasurement fetchMeasurement = new FetchMeasurement("*.fp.measure.office.com", MeasurementTypes.HTTPS, "", "", new MeasurementContext());
+            wildcardFetchUrl = fetchMeasurement.new FetchUrl(MeasurementTypes.HTTPS, "*.fp.measure.office.com");
+            plainFetchUrl = fetchMeasurement.new FetchUrl(MeasurementTypes.HTTP, "www.office.com");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DrainState {
+        @Param({"43", "65536", "4194304"})
+        public int bodySize;
+
+        ByteArrayInputStream body;
+
+        @Setup
+        public void setup() {
+            byte[] bytes = new byte[bodySize];
+            new Random(3).nextBytes(bytes);
+            body = new ByteArrayInputStream(bytes);
+        }
+    }
+
+    @Benchmark
+    public List<MeasurementEndpoint> selectMeasurementEndpoints(SelectionState state) {
+        return state.measurementAgent.selectMeasurementEndpoints();
+    }
+
+    @Benchmark
+    public String getNextFetchUrlWildcard(FetchUrlState state) {
+        return state.wildcardFetchUrl.getNextFetchUrl();
+    }
+
+    @Benchmark
+    public String getNextFetchUrlPlain(FetchUrlState state) {
+        return state.plainFetchUrl.getNextFetchUrl();
+    }
+
+    @Benchmark
+    public long drainStream(DrainState state) {
+        state.body.reset();
+        return FetchMeasurement.drainStream(state.body);
+    }
+}
@@ -0,0 +1,81 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Report formatting: the streamed query string of formatReport and the JSONObject of getFormattedReportItem.
+ * Run with -prof gc to see the allocation rate next to the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int itemCount;
+
+    private List<IReportItem> reportItems;
+    private FetchReportItem reportItem;
+
+    @Setup
+    public void setup() {
+        reportItems = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            reportItems.add(newReportItem(i));
+        }
+        reportItem = newReportItem(0);
+    }
+
+    @Benchmark
+    public String formatReport() throws JSONException {
+        return InternetAnalyzerClient.formatReport(reportItems, "INTERNET-ANALYZER-BENCHMARK", "tag benchmark", "0123456789abcdef0123456789abcdef");
+    }
+
+    @Benchmark
+    public JSONObject getFormattedReportItem() throws JSONException {
+        return reportItem.getFormattedReportItem();
+    }
+
+    private static FetchReportItem newReportItem(int i) {
+        FetchReportItem reportItem = new FetchReportItem();
+        reportItem.addMeasurementProperties(String.format("%032x", i), 20 + i % 300, MeasurementTypes.HTTPS,
+                i % 2 == 0 ? "cold" : "warm", "https://" + i + "abcdef.fp.measure.office.com/apc/trans.gif", "experiment-" + (i % 4));
+        reportItem.setBytesReceived(43);
+        reportItem.setConnectionReused(i % 2 == 1);
+
+        FetchPhaseTimings phaseTimings = new FetchPhaseTimings();
+        phaseTimings.setDnsNanos(1_250_000);
+        phaseTimings.setTcpConnectNanos(8_400_000);
+        phaseTimings.setTlsHandshakeNanos(17_900_000);
+        phaseTimings.setTimeToFirstByteNanos(22_100_000);
+        phaseTimings.setDownloadNanos(350_000);
+        reportItem.setPhaseTimings(phaseTimings);
+        return reportItem;
+    }
+}
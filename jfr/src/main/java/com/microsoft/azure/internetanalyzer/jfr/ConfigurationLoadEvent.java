@@ -0,0 +1,32 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * One attempt to load the measurement configuration, from the cache or the configuration host.
+ */
+@Name("com.microsoft.azure.internetanalyzer.ConfigurationLoad")
+@Label("Configuration Load")
+@Category({"Azure Internet Analyzer"})
+final class ConfigurationLoadEvent extends jdk.jfr.Event {
+
+    @Label("Configuration Url")
+    String configUrl;
+
+    @Label("Load Duration")
+    @Timespan
+    long loadDuration;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,69 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * One cold or warm measurement fetch. Phases that were not observed, such as TLS on a plain http fetch, are -1.
+ */
+@Name("com.microsoft.azure.internetanalyzer.Fetch")
+@Label("Measurement Fetch")
+@Category({"Azure Internet Analyzer"})
+final class FetchEvent extends jdk.jfr.Event {
+
+    @Label("Host")
+    String host;
+
+    @Label("Measurement Type")
+    int measurementType;
+
+    @Label("Connection Type")
+    String connectionType;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Redirects")
+    int redirects;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+
+    @Label("Fetch Duration")
+    @Timespan
+    long fetchDuration;
+
+    @Label("DNS")
+    @Timespan
+    long dns;
+
+    @Label("TCP Connect")
+    @Timespan
+    long tcpConnect;
+
+    @Label("TLS Handshake")
+    @Timespan
+    long tlsHandshake;
+
+    @Label("Time To First Byte")
+    @Timespan
+    long timeToFirstByte;
+
+    @Label("Download")
+    @Timespan
+    long download;
+
+    @Label("Success")
+    boolean success;
+}
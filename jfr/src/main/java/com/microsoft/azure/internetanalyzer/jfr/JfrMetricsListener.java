@@ -0,0 +1,109 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer.jfr;
+
+import com.microsoft.azure.internetanalyzer.FetchPhaseTimings;
+import com.microsoft.azure.internetanalyzer.IMetricsListener;
+import com.microsoft.azure.internetanalyzer.ReportUploadMode;
+
+import java.io.IOException;
+
+/*
+ * Commits a JFR event for every configuration load, fetch, report serialization and upload attempt, so a recording
+ * lines measurement latency up with GC pauses and thread scheduling of the process. The listener is called once a
+ * phase has ended, so each event is committed at the end of its phase and carries the phase length in a Timespan
+ * field instead of the event duration. Events that are not enabled in the running recording cost one check.
+ *
+ * All calls are passed on to an optional delegate, e.g. a listener that feeds a metrics registry.
+ */
+public final class JfrMetricsListener implements IMetricsListener {
+
+    private final IMetricsListener delegate;
+
+    public JfrMetricsListener() {
+        this(IMetricsListener.NONE);
+    }
+
+    public JfrMetricsListener(IMetricsListener delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onConfigurationLoaded(String configUrl, long durationNanos, boolean success) {
+        ConfigurationLoadEvent event = new ConfigurationLoadEvent();
+        if (event.isEnabled()) {
+            event.configUrl = configUrl;
+            event.loadDuration = durationNanos;
+            event.success = success;
+            event.commit();
+        }
+
+        delegate.onConfigurationLoaded(configUrl, durationNanos, success);
+    }
+
+    @Override
+    public void onMeasurementTaken(int measurementType, String host, String connectionType, int statusCode, FetchPhaseTimings phaseTimings, long durationNanos, long bytesReceived, int redirects, boolean success) {
+        FetchEvent event = new FetchEvent();
+        if (event.isEnabled()) {
+            event.host = host;
+            event.measurementType = measurementType;
+            event.connectionType = connectionType;
+            event.statusCode = statusCode;
+            event.redirects = redirects;
+            event.bytesReceived = bytesReceived;
+            event.fetchDuration = durationNanos;
+            event.dns = phaseTimings != null ? phaseTimings.getDnsNanos() : -1;
+            event.tcpConnect = phaseTimings != null ? phaseTimings.getTcpConnectNanos() : -1;
+            event.tlsHandshake = phaseTimings != null ? phaseTimings.getTlsHandshakeNanos() : -1;
+            event.timeToFirstByte = phaseTimings != null ? phaseTimings.getTimeToFirstByteNanos() : -1;
+            event.download = phaseTimings != null ? phaseTimings.getDownloadNanos() : -1;
+            event.success = success;
+            event.commit();
+        }
+
+        delegate.onMeasurementTaken(measurementType, host, connectionType, statusCode, phaseTimings, durationNanos, bytesReceived, redirects, success);
+    }
+
+    @Override
+    public void onReportFormatted(int reportItemCount, long reportBytes, long durationNanos) {
+        ReportFormatEvent event = new ReportFormatEvent();
+        if (event.isEnabled()) {
+            event.reportItemCount = reportItemCount;
+            event.reportBytes = reportBytes;
+            event.formatDuration = durationNanos;
+            event.commit();
+        }
+
+        delegate.onReportFormatted(reportItemCount, reportBytes, durationNanos);
+    }
+
+    @Override
+    public void onReportUploaded(String uploadUrl, ReportUploadMode reportUploadMode, int statusCode, long bytesSent, long durationNanos, boolean success) {
+        ReportUploadEvent event = new ReportUploadEvent();
+        if (event.isEnabled()) {
+            event.uploadUrl = uploadUrl;
+            event.uploadMode = reportUploadMode.name();
+            event.statusCode = statusCode;
+            event.bytesSent = bytesSent;
+            event.uploadDuration = durationNanos;
+            event.success = success;
+            event.commit();
+        }
+
+        delegate.onReportUploaded(uploadUrl, reportUploadMode, statusCode, bytesSent, durationNanos, success);
+    }
+
+    @Override
+    public void onRetry(String failedUrl, IOException cause) {
+        delegate.onRetry(failedUrl, cause);
+    }
+}
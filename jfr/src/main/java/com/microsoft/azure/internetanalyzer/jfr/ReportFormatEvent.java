@@ -0,0 +1,34 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Serializing a report into the upload query string or the compressed POST body.
+ */
+@Name("com.microsoft.azure.internetanalyzer.ReportFormat")
+@Label("Report Format")
+@Category({"Azure Internet Analyzer"})
+final class ReportFormatEvent extends jdk.jfr.Event {
+
+    @Label("Report Items")
+    int reportItemCount;
+
+    @Label("Report Size")
+    @DataAmount
+    long reportBytes;
+
+    @Label("Format Duration")
+    @Timespan
+    long formatDuration;
+}
@@ -0,0 +1,43 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * One report upload attempt; statusCode is -1 when no response was received.
+ */
+@Name("com.microsoft.azure.internetanalyzer.ReportUpload")
+@Label("Report Upload")
+@Category({"Azure Internet Analyzer"})
+final class ReportUploadEvent extends jdk.jfr.Event {
+
+    @Label("Upload Url")
+    String uploadUrl;
+
+    @Label("Upload Mode")
+    String uploadMode;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+
+    @Label("Upload Duration")
+    @Timespan
+    long uploadDuration;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,102 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer.jfr;
+
+import com.microsoft.azure.internetanalyzer.FetchPhaseTimings;
+import com.microsoft.azure.internetanalyzer.IMetricsListener;
+import com.microsoft.azure.internetanalyzer.MeasurementTypes;
+import com.microsoft.azure.internetanalyzer.ReportUploadMode;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JfrMetricsListenerUnitTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void RecordsFetchAndUploadEventsTest() throws Exception {
+        List<String> delegated = new ArrayList<String>();
+        JfrMetricsListener listener = new JfrMetricsListener(new IMetricsListener() {
+            @Override
+            public void onMeasurementTaken(int measurementType, String host, String connectionType, int statusCode, FetchPhaseTimings phaseTimings, long durationNanos, long bytesReceived, int redirects, boolean success) {
+                delegated.add("fetch " + host);
+            }
+
+            @Override
+            public void onReportUploaded(String uploadUrl, ReportUploadMode reportUploadMode, int statusCode, long bytesSent, long durationNanos, boolean success) {
+                delegated.add("upload " + statusCode);
+            }
+        });
+
+        FetchPhaseTimings phaseTimings = new FetchPhaseTimings();
+        phaseTimings.setTcpConnectNanos(2_000_000);
+        phaseTimings.setTimeToFirstByteNanos(5_000_000);
+
+        Path recordingFile = temporaryFolder.newFile("events.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable("com.microsoft.azure.internetanalyzer.Fetch");
+            recording.enable("com.microsoft.azure.internetanalyzer.ReportUpload");
+            recording.disable("com.microsoft.azure.internetanalyzer.ReportFormat");
+            recording.start();
+
+            listener.onMeasurementTaken(MeasurementTypes.HTTPS, "test.endpoint", "cold", 200, phaseTimings, 9_000_000, 43, 1, true);
+            listener.onReportUploaded("https://test.endpoint/report/r.gif", ReportUploadMode.POST_GZIP, 405, 512, 3_000_000, false);
+            listener.onReportFormatted(6, 2048, 100_000);
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        // the recording also holds the JDK's own bookkeeping events
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            if (event.getEventType().getName().startsWith("com.microsoft.azure.internetanalyzer.")) {
+                events.add(event);
+            }
+        }
+        assertEquals(events.size(), 2);
+
+        RecordedEvent fetch = events.get(0);
+        assertEquals(fetch.getEventType().getName(), "com.microsoft.azure.internetanalyzer.Fetch");
+        assertEquals(fetch.getString("host"), "test.endpoint");
+        assertEquals(fetch.getString("connectionType"), "cold");
+        assertEquals(fetch.getInt("statusCode"), 200);
+        assertEquals(fetch.getInt("redirects"), 1);
+        assertEquals(fetch.getLong("bytesReceived"), 43);
+        assertEquals(fetch.getDuration("fetchDuration"), Duration.ofMillis(9));
+        assertEquals(fetch.getDuration("tcpConnect"), Duration.ofMillis(2));
+        assertEquals(fetch.getDuration("timeToFirstByte"), Duration.ofMillis(5));
+        assertTrue(fetch.getBoolean("success"));
+
+        RecordedEvent upload = events.get(1);
+        assertEquals(upload.getEventType().getName(), "com.microsoft.azure.internetanalyzer.ReportUpload");
+        assertEquals(upload.getString("uploadMode"), "POST_GZIP");
+        assertEquals(upload.getInt("statusCode"), 405);
+        assertEquals(upload.getLong("bytesSent"), 512);
+        assertEquals(upload.getDuration("uploadDuration"), Duration.ofMillis(3));
+
+        // events that are not enabled are skipped, the delegate still sees every call
+        assertEquals(delegated.size(), 2);
+        assertEquals(delegated.get(0), "fetch test.endpoint");
+        assertEquals(delegated.get(1), "upload 405");
+    }
+}
@@ -0,0 +1,251 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Caches parsed measurement configurations by configuration url. Entries are fresh for the Cache-Control max-age
+ * sent by the configuration host; stale entries with an ETag are revalidated with If-None-Match so an unchanged
+ * configuration is neither downloaded nor parsed again. Responses without max-age or ETag are not cached.
+ *
+ * An optional directory keeps the entries across process restarts. Disk errors are ignored since the cache is only
+ * an optimization.
+ */
+public class ConfigurationCache {
+    private static final String diskEntrySuffix = ".json";
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final File diskCacheDirectory;
+
+    public ConfigurationCache() {
+        this(null);
+    }
+
+    public ConfigurationCache(File diskCacheDirectory) {
+        if (diskCacheDirectory != null && !diskCacheDirectory.isDirectory() && !diskCacheDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create configuration cache directory: " + diskCacheDirectory);
+        }
+
+        this.diskCacheDirectory = diskCacheDirectory;
+    }
+
+    /*
+     * Returns the parsed configuration served at configUrl, from the cache when it is still fresh.
+     */
+    public MeasurementConfiguration getConfiguration(String configUrl, IHttpTransport httpTransport) throws IOException, JSONException {
+        Entry entry = entries.get(configUrl);
+        if (entry == null) {
+            entry = readDiskEntry(configUrl);
+            if (entry != null) {
+                entries.put(configUrl, entry);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expiresAtMillis) {
+            return entry.configuration;
+        }
+
+        HttpRequest request = new HttpRequest("GET", new URL(configUrl));
+        if (entry != null && entry.etag != null) {
+            request.setHeader("If-None-Match", entry.etag);
+        }
+
+        IHttpResponse response = httpTransport.send(request);
+        try {
+            long maxAgeMillis = getMaxAgeMillis(response);
+            if (entry != null && response.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Entry revalidated = new Entry(entry.configuration, entry.body, entry.etag, now + Math.max(maxAgeMillis, 0));
+                store(configUrl, revalidated);
+                return revalidated.configuration;
+            }
+
+            String body = readBody(response.getBody());
+            if (body.trim().isEmpty()) {
+                throw new IllegalArgumentException("Configuration served at " + configUrl + " is empty.");
+            }
+
+            MeasurementConfiguration configuration = MeasurementConfiguration.parse(body);
+            String etag = response.getHeaderField("ETag");
+            if (maxAgeMillis > 0 || (maxAgeMillis == 0 && etag != null)) {
+                store(configUrl, new Entry(configuration, diskCacheDirectory != null ? body : null, etag, now + maxAgeMillis));
+            } else {
+                remove(configUrl);
+            }
+
+            return configuration;
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    public void clear() {
+        for (String configUrl : entries.keySet()) {
+            remove(configUrl);
+        }
+    }
+
+    /*
+     * Returns the freshness lifetime from Cache-Control, 0 when the response has to be revalidated before every use
+     * and -1 when it must not be stored at all.
+     */
+    private static long getMaxAgeMillis(IHttpResponse response) {
+        String cacheControl = response.getHeaderField("Cache-Control");
+        if (cacheControl == null) {
+            return 0;
+        }
+
+        long maxAgeSeconds = 0;
+        for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-store")) {
+                return -1;
+            } else if (directive.equals("no-cache")) {
+                return 0;
+            } else if (directive.startsWith("max-age=")) {
+                try {
+                    maxAgeSeconds = Long.parseLong(directive.substring("max-age=".length()).replace("\"", "").trim());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+
+        String age = response.getHeaderField("Age");
+        if (age != null) {
+            try {
+                maxAgeSeconds -= Long.parseLong(age.trim());
+            } catch (NumberFormatException ignored) {
+                // a malformed Age header does not shorten the lifetime
+            }
+        }
+
+        return TimeUnit.SECONDS.toMillis(Math.max(maxAgeSeconds, 0));
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                body.write(buffer, 0, bytesRead);
+            }
+
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void store(String configUrl, Entry entry) {
+        entries.put(configUrl, entry);
+        writeDiskEntry(configUrl, entry);
+    }
+
+    private void remove(String configUrl) {
+        entries.remove(configUrl);
+        File diskEntry = getDiskEntryFile(configUrl);
+        if (diskEntry != null && diskEntry.exists()) {
+            diskEntry.delete();
+        }
+    }
+
+    private Entry readDiskEntry(String configUrl) {
+        File diskEntry = getDiskEntryFile(configUrl);
+        if (diskEntry == null || !diskEntry.isFile()) {
+            return null;
+        }
+
+        try {
+            JSONObject stored = new JSONObject(new String(Files.readAllBytes(diskEntry.toPath()), StandardCharsets.UTF_8));
+            if (!configUrl.equals(stored.optString("url"))) {
+                return null;
+            }
+
+            String body = stored.getString("body");
+            String etag = stored.has("etag") ? stored.getString("etag") : null;
+            return new Entry(MeasurementConfiguration.parse(body), body, etag, stored.getLong("expires"));
+        } catch (IOException | JSONException ex) {
+            return null;
+        }
+    }
+
+    private void writeDiskEntry(String configUrl, Entry entry) {
+        File diskEntry = getDiskEntryFile(configUrl);
+        if (diskEntry == null || entry.body == null) {
+            return;
+        }
+
+        try {
+            JSONObject stored = new JSONObject();
+            stored.put("url", configUrl);
+            stored.put("body", entry.body);
+            stored.put("expires", entry.expiresAtMillis);
+            if (entry.etag != null) {
+                stored.put("etag", entry.etag);
+            }
+
+            // write next to the entry and move it in place so readers never see a partial file
+            File temp = File.createTempFile("config", ".tmp", diskCacheDirectory);
+            Files.write(temp.toPath(), stored.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), diskEntry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | JSONException ex) {
+            diskEntry.delete();
+        }
+    }
+
+    private File getDiskEntryFile(String configUrl) {
+        if (diskCacheDirectory == null) {
+            return null;
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(configUrl.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+
+            return new File(diskCacheDirectory, name.append(diskEntrySuffix).toString());
+        } catch (NoSuchAlgorithmException ex) {
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final MeasurementConfiguration configuration;
+        private final String body;
+        private final String etag;
+        private final long expiresAtMillis;
+
+        Entry(MeasurementConfiguration configuration, String body, String etag, long expiresAtMillis) {
+            this.configuration = configuration;
+            this.body = body;
+            this.etag = etag;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
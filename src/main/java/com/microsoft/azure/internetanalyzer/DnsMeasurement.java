@@ -0,0 +1,59 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.security.cert.CertificateEncodingException;
+import java.util.List;
+
+/*
+ * Times the resolution of the endpoint's host name on its own, apart from the cold fetch that otherwise hides it.
+ * A wildcard endpoint resolves a fresh GUID name, which no cache on the way can answer. The default resolver queries
+ * DNS directly and leaves the InetAddress cache untouched; see JndiDnsResolver.
+ */
+public class DnsMeasurement implements IMeasurement {
+
+    private final String measurementEndpoint;
+    private final String experimentId;
+    private final IDnsResolver resolver;
+
+    public DnsMeasurement(String measurementEndpoint, String experimentId) {
+        this(measurementEndpoint, experimentId, new MeasurementContext());
+    }
+
+    public DnsMeasurement(String measurementEndpoint, String experimentId, MeasurementContext context) {
+        if (measurementEndpoint == null || measurementEndpoint.isEmpty()) {
+            throw new IllegalArgumentException("measurementEndpoint cannot be empty");
+        }
+
+        this.measurementEndpoint = measurementEndpoint;
+        this.experimentId = experimentId != null ? experimentId : "";
+        this.resolver = context.getDnsResolver();
+    }
+
+    @Override
+    public void takeAndReportMeasurements(List<IReportItem> report) throws IOException, CertificateEncodingException {
+        String host = Endpoints.expandWildcardEndpoint(measurementEndpoint);
+        DnsReportItem reportItem = new DnsReportItem(host, experimentId);
+
+        // endpoints may carry a port; only the name is resolved
+        String hostName = Endpoints.endpointHost(host);
+
+        try {
+            resolver.prepare();
+            long start = System.nanoTime();
+            InetAddress[] addresses = resolver.resolve(hostName);
+            reportItem.setResolution(System.nanoTime() - start, addresses);
+        } catch (IOException ex) {
+            // reported with a Result of -1
+        }
+
+        report.add(reportItem);
+    }
+}
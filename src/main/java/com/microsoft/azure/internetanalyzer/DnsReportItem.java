@@ -0,0 +1,75 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.InetAddress;
+
+/*
+ * Outcome of one DnsMeasurement. Result is the resolution time in whole milliseconds, or -1 when the name did not
+ * resolve; Dns is the same time in milliseconds with microsecond precision and Addresses the resolved addresses.
+ */
+public class DnsReportItem implements IReportItem {
+    private final String requestId;
+    private final String experimentId;
+
+    private long resolutionNanos = -1;
+    private String[] addresses = new String[0];
+
+    public DnsReportItem(String requestId, String experimentId) {
+        this.requestId = requestId;
+        this.experimentId = experimentId;
+    }
+
+    public void setResolution(long resolutionNanos, InetAddress[] resolvedAddresses) {
+        this.resolutionNanos = resolutionNanos;
+        this.addresses = new String[resolvedAddresses.length];
+        for (int i = 0; i < resolvedAddresses.length; i++) {
+            addresses[i] = resolvedAddresses[i].getHostAddress();
+        }
+    }
+
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+
+    public String[] getAddresses() {
+        return addresses.clone();
+    }
+
+    public JSONObject getFormattedReportItem() throws JSONException {
+        JSONObject resultJSONObj = new JSONObject();
+        if (!requestId.isEmpty()) {
+            resultJSONObj.put("RequestID", requestId);
+        }
+
+        if (!experimentId.isEmpty()) {
+            resultJSONObj.put("Ex", experimentId);
+        }
+
+        resultJSONObj.put("Result", getResult());
+        resultJSONObj.put("T", MeasurementTypes.DNS_LOOKUP);
+        if (resolutionNanos >= 0) {
+            resultJSONObj.put("Dns", FetchPhaseTimings.toMillis(resolutionNanos));
+            JSONArray addressArray = new JSONArray();
+            for (String address : addresses) {
+                addressArray.put(address);
+            }
+            resultJSONObj.put("Addresses", addressArray);
+        }
+
+        return resultJSONObj;
+    }
+
+    private long getResult() {
+        return resolutionNanos >= 0 ? resolutionNanos / 1000000 : -1;
+    }
+}
@@ -0,0 +1,65 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+/*
+ * Parsing of the configured measurement endpoints and object paths, shared by the measurements.
+ */
+final class Endpoints {
+
+    private Endpoints() {
+    }
+
+    /*
+     * Replaces the "*" of a wildcard endpoint with a fresh GUID label, so that the name is a guaranteed cache miss
+     * for every resolver on the way; other endpoints are returned unchanged.
+     */
+    static String expandWildcardEndpoint(String measurementEndpoint) {
+        return measurementEndpoint.startsWith("*.") ? FetchMeasurement.generateAlphaNumericGuidStr() + measurementEndpoint.substring(1) : measurementEndpoint;
+    }
+
+    /*
+     * Returns the configured object path with a leading "/", or defaultObjectPath when none is configured.
+     */
+    static String normalizeObjectPath(String objectPath, String defaultObjectPath) {
+        if (objectPath == null || objectPath.isEmpty()) {
+            return defaultObjectPath;
+        }
+
+        return objectPath.startsWith("/") ? objectPath : "/" + objectPath;
+    }
+
+    /*
+     * The object name reported for an object path, the part after its last "/".
+     */
+    static String objectName(String objectPath) {
+        return objectPath.substring(objectPath.lastIndexOf('/') + 1);
+    }
+
+    /*
+     * Host part of an endpoint of the form host or host:port. An endpoint with more than one ":" is an IPv6
+     * literal without a port and is returned unchanged.
+     */
+    static String endpointHost(String endpoint) {
+        int portSeparator = endpointPortSeparator(endpoint);
+        return portSeparator > 0 ? endpoint.substring(0, portSeparator) : endpoint;
+    }
+
+    /*
+     * Port of an endpoint of the form host:port, or defaultPort when it has none.
+     */
+    static int endpointPort(String endpoint, int defaultPort) {
+        int portSeparator = endpointPortSeparator(endpoint);
+        return portSeparator > 0 ? Integer.parseInt(endpoint.substring(portSeparator + 1)) : defaultPort;
+    }
+
+    private static int endpointPortSeparator(String endpoint) {
+        int portSeparator = endpoint.lastIndexOf(':');
+        return portSeparator > 0 && endpoint.indexOf(':') == portSeparator ? portSeparator : -1;
+    }
+}
@@ -7,19 +7,19 @@
  *--------------------------------------------------------------------------------------------*/
 package com.microsoft.azure.internetanalyzer;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.security.cert.CertificateEncodingException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.azure.internetanalyzer.MeasurementTypes.HTTP;
 import static com.microsoft.azure.internetanalyzer.MeasurementTypes.HTTPS;
@@ -28,6 +28,9 @@ public class FetchMeasurement implements IMeasurement {
 
     private static final String defaultMeasurementObjPath = "/apc/";
     private static final String defaultLatencyImgName = "trans.gif";
+    private static final int drainBufferSize = 8192;
+    private static final int maxRedirects = 5;
+    private static final ThreadLocal<byte[]> drainBuffer = ThreadLocal.withInitial(() -> new byte[drainBufferSize]);
 
     private String measurementObjPath;
     private String latencyImageName;
@@ -36,12 +39,27 @@ public class FetchMeasurement implements IMeasurement {
     private String experimentId;
     private Set<FetchUrl> fetchUrls;
 
+    private IHttpTransport transport;
+    private MessageDigestPool certificateDigests;
+    private IMetricsListener metricsListener;
+
     public FetchMeasurement(String measurementEndpoint, int measurementType, String experimentId, String objectPath) {
+        this(measurementEndpoint, measurementType, experimentId, objectPath, new MeasurementContext());
+    }
+
+    public FetchMeasurement(String measurementEndpoint, int measurementType, String experimentId, String objectPath, IHttpTransport transport) {
+        this(measurementEndpoint, measurementType, experimentId, objectPath, new MeasurementContext(transport));
+    }
+
+    public FetchMeasurement(String measurementEndpoint, int measurementType, String experimentId, String objectPath, MeasurementContext context) {
         if (measurementEndpoint.isEmpty() || !MeasurementTypes.isFetchMeasurementType(measurementType)) {
             throw new IllegalArgumentException("measurementEndpoint is empty or measurementType is invalid");
         }
 
         this.measurementType = measurementType;
+        this.transport = context.getHttpTransport();
+        this.certificateDigests = context.getCertificateDigests();
+        this.metricsListener = context.getMetricsListener();
         this.fetchUrls = generateFetchURLs(measurementEndpoint);
         this.experimentId = experimentId;
 
@@ -69,81 +87,118 @@ public class FetchMeasurement implements IMeasurement {
 
     @Override
     public void takeAndReportMeasurements(List<IReportItem> report) throws IOException, CertificateEncodingException {
-        URLConnection connection = null;
         for (FetchUrl fetchUrlObj : fetchUrls) {
-            FetchReportItem reportItemCold = new FetchReportItem();
-            URL fetchUrl = new URL(fetchUrlObj.getNextFetchUrl());
-            long timeElapsedCold = takeMeasurement(fetchUrl, connection, ConnectionType.cold, reportItemCold);
-            reportItemCold.addMeasurementProperties(fetchUrlObj.getCurrentFetchEndpoint(), timeElapsedCold, fetchUrlObj.getMeasurementType(), ConnectionType.cold.toString(), latencyImageName, experimentId);
-            report.add(reportItemCold);
-
-            // only take the warm measurement if the cold measurement succeeds; otherwise if the warm measurement succeeds without a previous cold measurement, it is essentially a cold measurement
-            if (timeElapsedCold > 0) {
-                FetchReportItem reportItemWarm = new FetchReportItem();
-                long timeElapsedWarm = takeMeasurement(fetchUrl, connection, ConnectionType.warm, reportItemWarm);
-                reportItemWarm.addMeasurementProperties(fetchUrlObj.getCurrentFetchEndpoint(), timeElapsedWarm, fetchUrlObj.getMeasurementType(), ConnectionType.warm.toString(), latencyImageName, experimentId);
-                report.add(reportItemWarm);
+            // connections stay open between the cold and the warm fetch so that the warm fetch reuses them
+            Map<String, IHttpConnection> connections = new HashMap<String, IHttpConnection>();
+            try {
+                FetchReportItem reportItemCold = new FetchReportItem();
+                URL fetchUrl = new URL(fetchUrlObj.getNextFetchUrl());
+                long timeElapsedCold = takeMeasurement(fetchUrl, connections, ConnectionType.cold, reportItemCold, fetchUrlObj.getMeasurementType(), 0);
+                reportItemCold.addMeasurementProperties(fetchUrlObj.getCurrentFetchEndpoint(), timeElapsedCold, fetchUrlObj.getMeasurementType(), ConnectionType.cold.toString(), latencyImageName, experimentId);
+                report.add(reportItemCold);
+
+                // only take the warm measurement if the cold measurement succeeds; otherwise if the warm measurement succeeds without a previous cold measurement, it is essentially a cold measurement
+                // a cold fetch under a millisecond reports 0, which is still a success
+                if (timeElapsedCold >= 0) {
+                    FetchReportItem reportItemWarm = new FetchReportItem();
+                    long timeElapsedWarm = takeMeasurement(fetchUrl, connections, ConnectionType.warm, reportItemWarm, fetchUrlObj.getMeasurementType(), 0);
+                    reportItemWarm.addMeasurementProperties(fetchUrlObj.getCurrentFetchEndpoint(), timeElapsedWarm, fetchUrlObj.getMeasurementType(), ConnectionType.warm.toString(), latencyImageName, experimentId);
+                    report.add(reportItemWarm);
+                }
+            } finally {
+                for (IHttpConnection connection : connections.values()) {
+                    connection.close();
+                }
             }
         }
     }
 
-    private long takeMeasurement(URL fetchUrl, URLConnection connection, ConnectionType connectionType, FetchReportItem reportItem) throws IOException, CertificateEncodingException {
+    private long takeMeasurement(URL fetchUrl, Map<String, IHttpConnection> connections, ConnectionType connectionType, FetchReportItem reportItem, int fetchMeasurementType, int redirects) throws IOException, CertificateEncodingException {
         long elapsedTime = -1;
 
-        long start = System.currentTimeMillis();
-        connection = fetchUrl.openConnection();
-
-        if (!(connection instanceof HttpURLConnection)) {
-            return elapsedTime;
-        }
-
-        HttpURLConnection httpConnection = (HttpURLConnection)connection;
+        long start = System.nanoTime();
 
         // enables Https->Https redirects & Http->Http redirects
-        httpConnection.setInstanceFollowRedirects(true);
+        HttpRequest request = new HttpRequest("GET", fetchUrl);
+        request.setFollowRedirects(true);
+        request.setMeasurement(true);
+
+        IHttpResponse response = getConnection(fetchUrl, connections).send(request);
+        long firstByte = System.nanoTime();
+        FetchPhaseTimings phaseTimings = response.getPhaseTimings();
+        reportItem.setPhaseTimings(phaseTimings);
+        // left unset, and the field omitted, when the transport cannot tell
+        if (response.isConnectionReuseKnown()) {
+            reportItem.setConnectionReused(response.isConnectionReused());
+        }
 
-        int status = httpConnection.getResponseCode();
-        if (status == HttpURLConnection.HTTP_MOVED_TEMP || status == HttpURLConnection.HTTP_MOVED_PERM || status == HttpURLConnection.HTTP_SEE_OTHER) {
+        int status = response.getStatusCode();
+        if ((status == HttpURLConnection.HTTP_MOVED_TEMP || status == HttpURLConnection.HTTP_MOVED_PERM || status == HttpURLConnection.HTTP_SEE_OTHER) && redirects < maxRedirects) {
 
-            // get redirect url from "location" header field
-            String newUrlStr = connection.getHeaderField("Location");
+            // get redirect url from "location" header field, relative to the url that was fetched
+            String newUrlStr = response.getHeaderField("Location");
+            URL newUrl = newUrlStr != null ? new URL(fetchUrl, newUrlStr) : null;
 
-            // redirects http -> https traffic; ignores unsafe https->http redirect
-            if(newUrlStr.toLowerCase().startsWith("https")) {
-                return takeMeasurement(new URL(newUrlStr), connection, connectionType, reportItem);
+            // follows same-scheme and http -> https redirects; ignores unsafe https->http redirect
+            if (newUrl != null && (newUrl.getProtocol().equalsIgnoreCase("https") || newUrl.getProtocol().equalsIgnoreCase(fetchUrl.getProtocol()))) {
+                response.close();
+                return takeMeasurement(newUrl, connections, connectionType, reportItem, fetchMeasurementType, redirects + 1);
             }
         }
 
         try {
-            InputStream in = new BufferedInputStream(connection.getInputStream());
-            reportItem.addConnectionHeaders(connection, fetchUrl);
-
-            if (drainStream(in)) {
-                in.close();
-                long finish = System.currentTimeMillis();
-                elapsedTime = finish - start;
+            InputStream in = response.getBody();
+            reportItem.addConnectionHeaders(response, certificateDigests);
+
+            long bytesRead = drainStream(in);
+            if (bytesRead >= 0) {
+                response.close();
+                reportItem.setBytesReceived(bytesRead);
+                long finish = System.nanoTime();
+                phaseTimings.setDownloadNanos(finish - firstByte);
+                elapsedTime = TimeUnit.NANOSECONDS.toMillis(finish - start);
             }
         } catch (Exception e) {
-            elapsedTime = elapsedTime * httpConnection.getResponseCode();
+            elapsedTime = elapsedTime * status;
         } finally {
-            if (connectionType == ConnectionType.warm || elapsedTime < 0) {
-                httpConnection.disconnect();
+            if (elapsedTime < 0) {
+                response.disconnect();
             }
         }
 
+        metricsListener.onMeasurementTaken(fetchMeasurementType, fetchUrl.getHost(), connectionType.toString(), status, phaseTimings, System.nanoTime() - start, reportItem.getBytesReceived(), redirects, elapsedTime >= 0);
         return elapsedTime;
     }
 
-    private boolean drainStream(InputStream inputStream) {
+    private IHttpConnection getConnection(URL url, Map<String, IHttpConnection> connections) throws IOException {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String origin = url.getProtocol().toLowerCase(Locale.ROOT) + "://" + url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+        IHttpConnection connection = connections.get(origin);
+        if (connection == null) {
+            connection = transport.openConnection(url);
+            connections.put(origin, connection);
+        }
+
+        return connection;
+    }
+
+    /*
+     * Reads the response to the end and discards it, returning the number of bytes read or -1 on a read error.
+     * The payload is never decoded so that draining adds as little as possible to the measured latency.
+     */
+    static long drainStream(InputStream inputStream) {
+        byte[] buffer = drainBuffer.get();
+        long totalBytes = 0;
         try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(inputStream));
-            while (in.readLine() != null) {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                totalBytes += bytesRead;
             }
         } catch (IOException e) {
-            return false;
+            return -1;
         }
 
-        return true;
+        return totalBytes;
     }
 
     private Set<FetchUrl> generateFetchURLs(String measurementEndpoint) {
@@ -162,7 +217,7 @@ public class FetchMeasurement implements IMeasurement {
     }
 
     // Generates an RFC4122 version 4 GUID
-    private String generateAlphaNumericGuidStr() {
+    static String generateAlphaNumericGuidStr() {
         return UUID.randomUUID().toString().replace("-", "");
     }
 
@@ -204,15 +259,11 @@ public class FetchMeasurement implements IMeasurement {
 
             urlPath.append("://");
 
-            if (measurementEndpoint.startsWith("*.")) {
-                String fqdn = measurementEndpoint.substring(2); // get everything after the "*."
-                String measurementEndpointUuid = generateAlphaNumericGuidStr();
-                this.currentFetchEndpoint = measurementEndpointUuid;
-                urlPath.append(measurementEndpointUuid).append(".").append(fqdn);
-            } else {
-                urlPath.append(measurementEndpoint);
-                this.currentFetchEndpoint = measurementEndpoint;
-            }
+            String host = Endpoints.expandWildcardEndpoint(measurementEndpoint);
+            urlPath.append(host);
+
+            // a wildcard endpoint is reported by its GUID label alone
+            this.currentFetchEndpoint = host.equals(measurementEndpoint) ? host : host.substring(0, host.indexOf('.'));
 
             urlPath.append(measurementObjPath).append(latencyImageName);
 
@@ -0,0 +1,100 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Breakdown of a single fetch into its network phases, measured with System.nanoTime().
+ * A phase that was not observed (e.g. TLS on a plain http fetch, or connect on a reused connection) stays at -1.
+ */
+public class FetchPhaseTimings {
+    private static final long notMeasured = -1;
+
+    private long dnsNanos = notMeasured;
+    private long tcpConnectNanos = notMeasured;
+    private long tlsHandshakeNanos = notMeasured;
+    private long timeToFirstByteNanos = notMeasured;
+    private long downloadNanos = notMeasured;
+
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+
+    public void setDnsNanos(long dnsNanos) {
+        this.dnsNanos = dnsNanos;
+    }
+
+    public long getTcpConnectNanos() {
+        return tcpConnectNanos;
+    }
+
+    public void setTcpConnectNanos(long tcpConnectNanos) {
+        this.tcpConnectNanos = tcpConnectNanos;
+    }
+
+    public long getTlsHandshakeNanos() {
+        return tlsHandshakeNanos;
+    }
+
+    public void setTlsHandshakeNanos(long tlsHandshakeNanos) {
+        this.tlsHandshakeNanos = tlsHandshakeNanos;
+    }
+
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    public void setTimeToFirstByteNanos(long timeToFirstByteNanos) {
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+    }
+
+    public long getDownloadNanos() {
+        return downloadNanos;
+    }
+
+    public void setDownloadNanos(long downloadNanos) {
+        this.downloadNanos = downloadNanos;
+    }
+
+    /*
+     * Adds the measured phases to the report item in milliseconds, with microsecond precision.
+     */
+    void addTo(JSONObject reportItem) throws JSONException {
+        putPhase(reportItem, "Dns", dnsNanos);
+        putPhase(reportItem, "Tcp", tcpConnectNanos);
+        putPhase(reportItem, "Tls", tlsHandshakeNanos);
+        putPhase(reportItem, "Ttfb", timeToFirstByteNanos);
+        putPhase(reportItem, "Dl", downloadNanos);
+    }
+
+    static double toMillis(long nanos) {
+        return (nanos / 1000) / 1000.0;
+    }
+
+    void writeTo(ReportWriter writer) throws JSONException {
+        writePhase(writer, "Dns", dnsNanos);
+        writePhase(writer, "Tcp", tcpConnectNanos);
+        writePhase(writer, "Tls", tlsHandshakeNanos);
+        writePhase(writer, "Ttfb", timeToFirstByteNanos);
+        writePhase(writer, "Dl", downloadNanos);
+    }
+
+    private static void writePhase(ReportWriter writer, String key, long nanos) throws JSONException {
+        if (nanos >= 0) {
+            writer.field(key, toMillis(nanos));
+        }
+    }
+
+    private static void putPhase(JSONObject reportItem, String key, long nanos) throws JSONException {
+        if (nanos >= 0) {
+            reportItem.put(key, toMillis(nanos));
+        }
+    }
+}
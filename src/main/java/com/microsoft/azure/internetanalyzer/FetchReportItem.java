@@ -10,10 +10,7 @@ package com.microsoft.azure.internetanalyzer;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.net.URL;
-import java.net.URLConnection;
-import java.net.UnknownHostException;
-import java.security.MessageDigest;
+import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
@@ -21,9 +18,6 @@ import java.security.cert.X509Certificate;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLPeerUnverifiedException;
-
 
 public class FetchReportItem implements IReportItem {
     private String requestId = "";
@@ -33,6 +27,9 @@ public class FetchReportItem implements IReportItem {
     private String measurementObject = "";
     private String experimentId = "";
     private Map<String, String> headerMap = new HashMap<>();
+    private FetchPhaseTimings phaseTimings;
+    private long bytesReceived = -1;
+    private Boolean connectionReused;
 
     public void addMeasurementProperties(String requestId, long result, int measurementType, String connectionType, String measurementObject, String experimentId) {
         this.requestId = requestId;
@@ -43,21 +40,47 @@ public class FetchReportItem implements IReportItem {
         this.experimentId = experimentId;
     }
 
-    public void addConnectionHeaders(URLConnection connection, URL url) throws SSLPeerUnverifiedException, CertificateEncodingException, UnknownHostException, NoSuchAlgorithmException {
-        if (connection instanceof HttpsURLConnection) {
-            Certificate[] certificates = ((HttpsURLConnection) connection).getServerCertificates();
-            if (certificates != null && certificates.length > 0) {
-                Certificate cert = certificates[0];
-                headerMap.put("Ctp", bytesToHex(MessageDigest.getInstance("SHA-1").digest(cert.getEncoded())));
-                headerMap.put("Cib", ((X509Certificate) cert).getIssuerX500Principal().getName());
-            }
+    public void setPhaseTimings(FetchPhaseTimings phaseTimings) {
+        this.phaseTimings = phaseTimings;
+    }
+
+    public FetchPhaseTimings getPhaseTimings() {
+        return phaseTimings;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setConnectionReused(boolean connectionReused) {
+        this.connectionReused = connectionReused;
+    }
+
+    public Boolean getConnectionReused() {
+        return connectionReused;
+    }
+
+    public void addConnectionHeaders(IHttpResponse response) throws IOException, CertificateEncodingException, NoSuchAlgorithmException {
+        addConnectionHeaders(response, new MessageDigestPool("SHA-1", 0));
+    }
+
+    void addConnectionHeaders(IHttpResponse response, MessageDigestPool certificateDigests) throws IOException, CertificateEncodingException, NoSuchAlgorithmException {
+        Certificate[] certificates = response.getServerCertificates();
+        if (certificates != null && certificates.length > 0) {
+            Certificate cert = certificates[0];
+            headerMap.put("Ctp", bytesToHex(certificateDigests.digest(cert.getEncoded())));
+            headerMap.put("Cib", ((X509Certificate) cert).getIssuerX500Principal().getName());
         }
 
-        headerMap.put("Rip", connection.getHeaderField("X-UserHostAddress"));
-        headerMap.put("Ep", connection.getHeaderField("X-EndPoint"));
-        headerMap.put("Fe", connection.getHeaderField("X-FrontEnd"));
-        headerMap.put("Mn", connection.getHeaderField("X-MachineName"));
-        headerMap.put("Sip", connection.getHeaderField("X-ServerIP"));
+        headerMap.put("Rip", response.getHeaderField("X-UserHostAddress"));
+        headerMap.put("Ep", response.getHeaderField("X-EndPoint"));
+        headerMap.put("Fe", response.getHeaderField("X-FrontEnd"));
+        headerMap.put("Mn", response.getHeaderField("X-MachineName"));
+        headerMap.put("Sip", response.getHeaderField("X-ServerIP"));
     }
 
     public JSONObject getFormattedReportItem() throws JSONException {
@@ -81,6 +104,18 @@ public class FetchReportItem implements IReportItem {
         resultJSONObj.put("Result", result);
         resultJSONObj.put("T", measurementType);
 
+        if (connectionReused != null) {
+            resultJSONObj.put("Reused", connectionReused.booleanValue());
+        }
+
+        if (bytesReceived >= 0) {
+            resultJSONObj.put("Bytes", bytesReceived);
+        }
+
+        if (phaseTimings != null) {
+            phaseTimings.addTo(resultJSONObj);
+        }
+
         for (String key : headerMap.keySet()) {
             String headerVal = headerMap.get(key);
             if (headerVal != null && headerVal.trim().length() > 0) {
@@ -91,6 +126,53 @@ public class FetchReportItem implements IReportItem {
         return resultJSONObj;
     }
 
+    /*
+     * Streams the same fields as getFormattedReportItem without building the JSONObject.
+     */
+    @Override
+    public void writeReportItem(ReportWriter writer) throws JSONException {
+        writer.beginObject();
+        if (!requestId.isEmpty()) {
+            writer.field("RequestID", requestId);
+        }
+
+        if (!connectionType.isEmpty()) {
+            writer.field("Conn", connectionType);
+        }
+
+        if (!measurementObject.isEmpty()) {
+            writer.field("Object", measurementObject);
+        }
+
+        if (!experimentId.isEmpty()) {
+            writer.field("Ex", experimentId);
+        }
+
+        writer.field("Result", result);
+        writer.field("T", measurementType);
+
+        if (connectionReused != null) {
+            writer.field("Reused", connectionReused.booleanValue());
+        }
+
+        if (bytesReceived >= 0) {
+            writer.field("Bytes", bytesReceived);
+        }
+
+        if (phaseTimings != null) {
+            phaseTimings.writeTo(writer);
+        }
+
+        for (Map.Entry<String, String> header : headerMap.entrySet()) {
+            String headerVal = header.getValue();
+            if (headerVal != null && headerVal.trim().length() > 0) {
+                writer.field(header.getKey(), headerVal.trim());
+            }
+        }
+
+        writer.endObject();
+    }
+
     private String bytesToHex(byte[] hashInBytes) {
 
         StringBuilder sb = new StringBuilder();
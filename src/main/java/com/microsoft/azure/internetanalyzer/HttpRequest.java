@@ -0,0 +1,74 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class HttpRequest {
+    private String method;
+    private URL url;
+    private Map<String, String> headers = new LinkedHashMap<>();
+    private byte[] body;
+    private boolean followRedirects = true;
+    private boolean measurement;
+
+    public HttpRequest(String method, URL url) {
+        if (method == null || method.isEmpty() || url == null) {
+            throw new IllegalArgumentException("method and url must be set");
+        }
+
+        this.method = method;
+        this.url = url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public void setBody(byte[] body) {
+        this.body = body;
+    }
+
+    public boolean isFollowRedirects() {
+        return followRedirects;
+    }
+
+    public void setFollowRedirects(boolean followRedirects) {
+        this.followRedirects = followRedirects;
+    }
+
+    public boolean isMeasurement() {
+        return measurement;
+    }
+
+    /*
+     * Marks a request whose phase timings are reported; transports may spend extra work timing it, such as resolving
+     * the host on its own.
+     */
+    public void setMeasurement(boolean measurement) {
+        this.measurement = measurement;
+    }
+}
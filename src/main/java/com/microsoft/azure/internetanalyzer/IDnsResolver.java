@@ -0,0 +1,42 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/*
+ * Resolves host names for DnsMeasurement. Implementations should go to the network on every call; a lookup served
+ * from a local cache measures nothing.
+ */
+public interface IDnsResolver {
+
+    /*
+     * The platform resolver. Every name it resolves stays in the InetAddress cache for the JVM's cache ttl, which is
+     * why it is only the fallback where JNDI's DNS provider is missing (Android).
+     */
+    IDnsResolver SYSTEM = InetAddress::getAllByName;
+
+    /**
+     * Resolves the A and AAAA records of a host name
+     *
+     * @param host - the host name, without a port
+     * @return the addresses, at least one
+     * @throws java.net.UnknownHostException If the name does not exist or has no addresses
+     * @throws IOException On any other lookup error
+     */
+    InetAddress[] resolve(String host) throws IOException;
+
+    /**
+     * Sets up what the next resolve on the calling thread needs, so that it is not part of the measured lookup
+     *
+     * @throws IOException If the resolver cannot be set up
+     */
+    default void prepare() throws IOException {
+    }
+}
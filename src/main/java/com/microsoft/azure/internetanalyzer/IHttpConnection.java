@@ -0,0 +1,24 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface IHttpConnection extends Closeable {
+
+    /**
+     * Sends a request over this connection, reusing the open socket when possible. Requests to a different
+     * origin than the one the connection was opened for are rejected. Connections are not thread safe.
+     *
+     * @param request - the request to send
+     * @return the response; it must be closed (or disconnected) before the next request is sent
+     * @throws IOException On a connection or protocol error
+     */
+    IHttpResponse send(HttpRequest request) throws IOException;
+}
@@ -0,0 +1,83 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.cert.Certificate;
+
+public interface IHttpResponse extends Closeable {
+
+    /**
+     * Gets the url the response was received from
+     *
+     * @return the request url
+     */
+    URL getUrl();
+
+    /**
+     * Gets the http status code of the response
+     *
+     * @return the status code
+     */
+    int getStatusCode();
+
+    /**
+     * Gets the value of a response header
+     *
+     * @param name - case insensitive header name
+     * @return the header value, or null if the header is not present
+     */
+    String getHeaderField(String name);
+
+    /**
+     * Gets the certificate chain presented by the server
+     *
+     * @return the server certificates, or null for a plain http response
+     * @throws IOException If the certificates cannot be read
+     */
+    Certificate[] getServerCertificates() throws IOException;
+
+    /**
+     * Gets the response body
+     *
+     * @return the body stream
+     * @throws IOException If the response has an error status or the body cannot be read
+     */
+    InputStream getBody() throws IOException;
+
+    /**
+     * Gets the timings of the network phases observed while sending the request
+     *
+     * @return the phase timings; the download phase is left to the caller reading the body
+     */
+    FetchPhaseTimings getPhaseTimings();
+
+    /**
+     * Gets whether the request was sent over a connection (and TLS session) that had already served a request
+     *
+     * @return true if the connection was reused, false if it was new or reuse could not be observed
+     */
+    boolean isConnectionReused();
+
+    /**
+     * Gets whether the transport could observe if the connection was reused
+     *
+     * @return false when {@link #isConnectionReused()} is only a guess
+     */
+    default boolean isConnectionReuseKnown() {
+        return true;
+    }
+
+    /**
+     * Closes the underlying connection instead of releasing it for reuse
+     */
+    void disconnect();
+}
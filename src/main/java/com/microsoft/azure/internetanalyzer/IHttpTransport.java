@@ -0,0 +1,44 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.URL;
+
+public interface IHttpTransport {
+
+    /**
+     * Sends an http(s) request and returns once the response status line and headers have been received
+     *
+     * @param request - the request to send
+     * @return the response, whose body has not been read yet
+     * @throws IOException On a connection or protocol error
+     */
+    IHttpResponse send(HttpRequest request) throws IOException;
+
+    /**
+     * Opens a connection handle to the origin (scheme, host and port) of the given url. Transports that cannot
+     * pin a socket fall back to sending every request on its own through {@link #send(HttpRequest)}.
+     *
+     * @param url - any url of the origin to connect to
+     * @return the connection handle, which has to be closed by the caller
+     * @throws IOException On a connection error
+     */
+    default IHttpConnection openConnection(URL url) throws IOException {
+        return new IHttpConnection() {
+            @Override
+            public IHttpResponse send(HttpRequest request) throws IOException {
+                return IHttpTransport.this.send(request);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,53 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+
+/*
+ * Receives timings and outcomes of the phases of an execution, so the client's own overhead can be told apart from
+ * network latency. All methods default to no-ops. They are called synchronously on the executing thread, possibly
+ * from several threads at once, and should return quickly.
+ */
+public interface IMetricsListener {
+
+    IMetricsListener NONE = new IMetricsListener() {
+    };
+
+    /*
+     * One attempt to load the configuration from configUrl, served from the ConfigurationCache or downloaded.
+     */
+    default void onConfigurationLoaded(String configUrl, long durationNanos, boolean success) {
+    }
+
+    /*
+     * One cold or warm fetch of the measured object. redirects counts the hops followed before it; bytesReceived is
+     * -1 when the body could not be read.
+     */
+    default void onMeasurementTaken(int measurementType, String host, String connectionType, int statusCode, FetchPhaseTimings phaseTimings, long durationNanos, long bytesReceived, int redirects, boolean success) {
+    }
+
+    /*
+     * Serializing the report for upload; reportBytes is the length of the query string or of the compressed body.
+     */
+    default void onReportFormatted(int reportItemCount, long reportBytes, long durationNanos) {
+    }
+
+    /*
+     * One upload attempt; statusCode is -1 when no response was received. A POST that the collector rejected is
+     * reported with success false and followed by the GET of the same report.
+     */
+    default void onReportUploaded(String uploadUrl, ReportUploadMode reportUploadMode, int statusCode, long bytesSent, long durationNanos, boolean success) {
+    }
+
+    /*
+     * A configuration or upload url failed and the client moves on to the next one.
+     */
+    default void onRetry(String failedUrl, IOException cause) {
+    }
+}
@@ -18,4 +18,13 @@ public interface IReportItem {
      * @return JSON object representation of the report item
      */
     JSONObject getFormattedReportItem() throws JSONException;
+
+    /**
+     * Writes the report item as a JSON object. Report items can override this to skip building the JSONObject.
+     *
+     * @param writer writer the report is streamed into
+     */
+    default void writeReportItem(ReportWriter writer) throws JSONException {
+        writer.value(getFormattedReportItem());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/*
+ * Sends one TTL-limited probe towards a destination for TracerouteMeasurement. Probes of different TTLs are sent in
+ * parallel, so implementations have to be thread safe.
+ *
+ * There is no default implementation: Java exposes neither raw sockets nor the ICMP time-exceeded replies of the
+ * hops on the way, so a probe needs a platform backend (a raw socket helper, a native library or the OS traceroute)
+ * to report per-hop addresses and round trip times.
+ */
+public interface ITracerouteProbe {
+
+    /**
+     * Sends a probe that expires after ttl hops and waits for the reply
+     *
+     * @param destination - the address traced
+     * @param ttl - the time to live of the probe, 1 for the first hop
+     * @param timeoutMillis - how long to wait for a reply
+     * @return the hop that replied, or one without address and round trip time when none did
+     * @throws IOException On an error sending the probe
+     */
+    Hop probe(InetAddress destination, int ttl, int timeoutMillis) throws IOException;
+
+    /*
+     * The reply to the probe with a given TTL. address is empty and rttNanos -1 when no reply came back in time.
+     */
+    final class Hop {
+        private final int ttl;
+        private final String address;
+        private final long rttNanos;
+        private final boolean destinationReached;
+
+        public Hop(int ttl, String address, long rttNanos, boolean destinationReached) {
+            this.ttl = ttl;
+            this.address = address != null ? address : "";
+            this.rttNanos = rttNanos;
+            this.destinationReached = destinationReached;
+        }
+
+        public int getTtl() {
+            return ttl;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public long getRttNanos() {
+            return rttNanos;
+        }
+
+        public boolean isDestinationReached() {
+            return destinationReached;
+        }
+    }
+}
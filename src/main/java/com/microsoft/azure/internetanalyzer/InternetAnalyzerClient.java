@@ -12,86 +12,437 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateEncodingException;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 public class InternetAnalyzerClient {
 
     private static final String reportUploadUrlScheme = "https://";
+    private static final IHttpTransport defaultHttpTransport = new UrlConnectionHttpTransport();
+    private static final ConfigurationCache defaultConfigurationCache = new ConfigurationCache();
+    private static final int maxRetainedReportBufferSize = 64 * 1024;
+    private static final ThreadLocal<ReportWriter> reportWriters = ThreadLocal.withInitial(() -> new ReportWriter(true));
+    private static final String reportVersionParameter = new ReportWriter(true)
+            .appendRaw("&v=")
+            .appendText("InternetAnalyzer-Android-App:" + InternetAnalyzerClient.class.getPackage().getImplementationVersion())
+            .toString();
+
+    private final String[] configUrls;
+    private final String reportUploadPrefix;
+    private final IHttpTransport httpTransport;
+    private final MeasurementContext measurementContext;
+    private final ConfigurationCache configurationCache;
+    private final ReportUploadMode reportUploadMode;
+    private final ReportJournal reportJournal;
+    private final int measurementConcurrency;
+
+    private InternetAnalyzerClient(Builder builder) {
+        this.configUrls = builder.configUrls.clone();
+        this.reportUploadPrefix = builder.reportUploadPrefix;
+        this.httpTransport = builder.httpTransport;
+        this.measurementContext = builder.measurementHttpTransport != null ? new MeasurementContext(builder.measurementHttpTransport) : new MeasurementContext();
+        this.measurementContext.setMetricsListener(builder.metricsListener);
+        if (builder.xhrOrigin != null) {
+            this.measurementContext.setXhrOrigin(builder.xhrOrigin);
+        }
+        this.configurationCache = builder.configurationCache != null ? builder.configurationCache : new ConfigurationCache();
+        this.reportUploadMode = builder.reportUploadMode;
+        this.reportJournal = builder.reportJournal;
+        this.measurementConcurrency = builder.measurementConcurrency;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /*
+     * Measures and uploads a report for monitorId using the client's configuration urls, transports, cache and
+     * upload settings. Safe to call from any number of threads.
+     */
+    public firstSuccessfulHttpGetResult execute(String monitorId, String tag) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        MeasurementConfiguration configuration = getCachedConfiguration(configUrls, configurationCache, httpTransport, measurementContext.getMetricsListener());
+        return execute(monitorId, tag, configuration, reportUploadPrefix, httpTransport, measurementContext, reportUploadMode, reportJournal, measurementConcurrency);
+    }
 
+    /*
+     * Configurations fetched from configUrls are kept in a process wide ConfigurationCache, so repeated executions
+     * only go back to the configuration host once the served Cache-Control max-age ran out.
+     */
     public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String[] configUrls) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
-        return execute(monitorId, tag, getConfiguration(configUrls), reportUploadUrlScheme);
+        return execute(monitorId, tag, configUrls, defaultConfigurationCache);
+    }
+
+    public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String[] configUrls, ConfigurationCache configurationCache) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        MeasurementConfiguration configuration = getCachedConfiguration(configUrls, configurationCache, defaultHttpTransport, IMetricsListener.NONE);
+        return execute(monitorId, tag, configuration, reportUploadUrlScheme, defaultHttpTransport, new MeasurementContext(), ReportUploadMode.GET, null, 1);
+    }
+
+    public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String[] configUrls, ReportUploadMode reportUploadMode) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        MeasurementConfiguration configuration = getCachedConfiguration(configUrls, defaultConfigurationCache, defaultHttpTransport, IMetricsListener.NONE);
+        return execute(monitorId, tag, configuration, reportUploadUrlScheme, defaultHttpTransport, new MeasurementContext(), reportUploadMode, null, 1);
+    }
+
+    /*
+     * Reports that no upload endpoint accepted are appended to reportJournal before the upload error is thrown;
+     * replayJournaledReports uploads them later.
+     */
+    public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String[] configUrls, ReportJournal reportJournal) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        MeasurementConfiguration configuration = getCachedConfiguration(configUrls, defaultConfigurationCache, defaultHttpTransport, IMetricsListener.NONE);
+        return execute(monitorId, tag, configuration, reportUploadUrlScheme, defaultHttpTransport, new MeasurementContext(), ReportUploadMode.GET, reportJournal, 1);
+    }
+
+    public static int replayJournaledReports(ReportJournal reportJournal) throws IOException {
+        return replayJournaledReports(reportJournal, defaultHttpTransport);
+    }
+
+    /*
+     * Uploads the journaled reports oldest first, the same way they failed, and removes each one once an upload
+     * endpoint accepted it. Reports every upload endpoint rejected with a 4xx are dropped. Stops at the first report
+     * that still cannot be uploaded and returns the number of reports uploaded.
+     */
+    public static int replayJournaledReports(ReportJournal reportJournal, IHttpTransport httpTransport) throws IOException {
+        int uploaded = 0;
+        byte[] record;
+        while ((record = reportJournal.peekOldest()) != null) {
+            try {
+                replayJournaledReport(new JSONObject(new String(record, StandardCharsets.UTF_8)), httpTransport);
+                uploaded++;
+            } catch (JSONException | IllegalArgumentException ex) {
+                // a record that can't be read will never upload, drop it
+            } catch (ReportRejectedException ex) {
+                // retrying would only be rejected again
+            } catch (IOException ex) {
+                if (uploaded == 0) {
+                    throw ex;
+                }
+                break;
+            }
+
+            reportJournal.removeOldest();
+        }
+
+        return uploaded;
     }
 
+    private static firstSuccessfulHttpGetResult replayJournaledReport(JSONObject journaledReport, IHttpTransport httpTransport) throws JSONException, IOException {
+        JSONArray uploadEndpoints = journaledReport.getJSONArray("r");
+        String uploadEndpointPrefix = journaledReport.getString("p");
+        // records without a mode were journaled by GET uploads
+        ReportUploadMode reportUploadMode = ReportUploadMode.valueOf(journaledReport.optString("m", ReportUploadMode.GET.name()));
+        if (reportUploadMode == ReportUploadMode.GET) {
+            return tryUploadReport(journaledReport.getString("d"), uploadEndpoints, uploadEndpointPrefix, httpTransport, IMetricsListener.NONE);
+        }
+
+        String reportMetadata = journaledReport.getString("q");
+        byte[] reportBody = Base64.getDecoder().decode(journaledReport.getString("b"));
+        return tryPostReport(reportMetadata, reportBody, () -> reportMetadata + "&DATA=" + new ReportWriter(true).appendText(decompressReportData(reportBody, reportUploadMode)),
+                uploadEndpoints, uploadEndpointPrefix, httpTransport, reportUploadMode, IMetricsListener.NONE);
+    }
+
+    /*
+     * Takes the measurements and hands the report items to reportBatcher instead of uploading them right away,
+     * blocking while the batcher is full. The configuration and the measurements go through the batcher's transport.
+     */
+    public static void executeBatched(String monitorId, String tag, String[] configUrls, ReportBatcher reportBatcher) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        executeBatched(monitorId, tag, configUrls, reportBatcher, new MeasurementContext(reportBatcher.getHttpTransport()));
+    }
+
+    public static void executeBatched(String monitorId, String tag, String[] configUrls, ReportBatcher reportBatcher, MeasurementContext measurementContext) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        if (monitorId.isEmpty()) {
+            throw new IllegalArgumentException("MonitorId and/or Configuration and/or reportUploadPrefix is empty.");
+        }
+
+        MeasurementConfiguration configuration = getCachedConfiguration(configUrls, defaultConfigurationCache, reportBatcher.getHttpTransport(), measurementContext.getMetricsListener());
+        MeasurementAgent measurementAgent = new MeasurementAgent(configuration, measurementContext);
+        measurementAgent.PerformMeasurements();
+        try {
+            reportBatcher.offer(monitorId, tag, measurementAgent.getUploadEndpoints(), measurementAgent.getReportItems());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the report batcher.");
+        }
+    }
+
+    public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String[] configUrls, IHttpTransport httpTransport) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        MeasurementConfiguration configuration = getCachedConfiguration(configUrls, defaultConfigurationCache, httpTransport, IMetricsListener.NONE);
+        return execute(monitorId, tag, configuration, reportUploadUrlScheme, httpTransport, new MeasurementContext(httpTransport), ReportUploadMode.GET, null, 1);
+    }
+
+    /*
+     * Measurements, the configuration and report uploads all go through HttpURLConnection, which honors the platform
+     * proxy settings; pass a MeasurementContext with a SocketHttpTransport to time every connection phase.
+     */
     public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String configuration, String reportUploadPrefix) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        return execute(monitorId, tag, configuration, reportUploadPrefix, defaultHttpTransport, new MeasurementContext(), ReportUploadMode.GET);
+    }
+
+    public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String configuration, String reportUploadPrefix, IHttpTransport httpTransport) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        return execute(monitorId, tag, configuration, reportUploadPrefix, httpTransport, new MeasurementContext(httpTransport), ReportUploadMode.GET);
+    }
+
+    public static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String configuration, String reportUploadPrefix, IHttpTransport httpTransport, ReportUploadMode reportUploadMode) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        return execute(monitorId, tag, configuration, reportUploadPrefix, httpTransport, new MeasurementContext(httpTransport), reportUploadMode);
+    }
+
+    private static firstSuccessfulHttpGetResult execute(String monitorId, String tag, String configuration, String reportUploadPrefix, IHttpTransport httpTransport, MeasurementContext measurementContext, ReportUploadMode reportUploadMode) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
 
         //validate monitor Id, configuration, reportUploadPrefix is non-null or empty
         if (monitorId.isEmpty() || configuration.isEmpty() || reportUploadPrefix.isEmpty()) {
             throw new IllegalArgumentException("MonitorId and/or Configuration and/or reportUploadPrefix is empty.");
         }
 
-        MeasurementAgent measurementAgent = new MeasurementAgent(new JSONObject(configuration));
+        return execute(monitorId, tag, MeasurementConfiguration.parse(configuration), reportUploadPrefix, httpTransport, measurementContext, reportUploadMode, null, 1);
+    }
+
+    private static firstSuccessfulHttpGetResult execute(String monitorId, String tag, MeasurementConfiguration configuration, String reportUploadPrefix, IHttpTransport httpTransport, MeasurementContext measurementContext, ReportUploadMode reportUploadMode, ReportJournal reportJournal, int measurementConcurrency) throws JSONException, IOException, CertificateEncodingException, IllegalArgumentException {
+        if (monitorId.isEmpty() || reportUploadPrefix.isEmpty()) {
+            throw new IllegalArgumentException("MonitorId and/or Configuration and/or reportUploadPrefix is empty.");
+        }
+
+        MeasurementAgent measurementAgent = new MeasurementAgent(configuration, measurementContext);
         JSONArray uploadEndpoints = measurementAgent.getUploadEndpoints();
-        measurementAgent.PerformMeasurements();
+        performMeasurements(measurementAgent, measurementConcurrency);
         List<IReportItem> reportItems = measurementAgent.getReportItems();
-        return tryUploadReport(formatReport(reportItems, monitorId, tag), uploadEndpoints, reportUploadPrefix);
+        return uploadReport(reportItems, monitorId, tag, uploadEndpoints, reportUploadPrefix, httpTransport, reportUploadMode, reportJournal, measurementContext.getMetricsListener());
+    }
+
+    private static void performMeasurements(MeasurementAgent measurementAgent, int measurementConcurrency) throws IOException, CertificateEncodingException {
+        if (measurementConcurrency > 1) {
+            measurementAgent.PerformMeasurements(measurementConcurrency);
+        } else {
+            measurementAgent.PerformMeasurements();
+        }
     }
 
     public static String getConfiguration(String[] configUrls) throws IOException {
-        firstSuccessfulHttpGetResult measurementConfigs = executeFirstSuccessfulHttpGet(configUrls);
+        return getConfiguration(configUrls, defaultHttpTransport);
+    }
+
+    public static String getConfiguration(String[] configUrls, IHttpTransport httpTransport) throws IOException {
+        firstSuccessfulHttpGetResult measurementConfigs = executeFirstSuccessfulHttpGet(configUrls, httpTransport);
         return measurementConfigs.getResult();
     }
 
+    /*
+     * Loads the configuration from the first url that can be served from the cache or fetched and parsed. A url
+     * serving an empty or malformed configuration is skipped like one that cannot be reached.
+     */
+    private static MeasurementConfiguration getCachedConfiguration(String[] configUrls, ConfigurationCache configurationCache, IHttpTransport httpTransport, IMetricsListener metricsListener) throws JSONException, IOException {
+        if (configUrls == null || configUrls.length == 0) {
+            throw new IllegalArgumentException("At least one configuration url is required.");
+        }
+
+        IOException lastError = null;
+        for (int i = 0; i < configUrls.length; i++) {
+            long start = System.nanoTime();
+            try {
+                MeasurementConfiguration configuration = configurationCache.getConfiguration(configUrls[i], httpTransport);
+                metricsListener.onConfigurationLoaded(configUrls[i], System.nanoTime() - start, true);
+                return configuration;
+            } catch (IOException | JSONException | IllegalArgumentException ex) {
+                metricsListener.onConfigurationLoaded(configUrls[i], System.nanoTime() - start, false);
+                lastError = ex instanceof IOException ? (IOException) ex : new IOException("Invalid configuration served at " + configUrls[i] + ": " + ex.getMessage(), ex);
+                if (i < configUrls.length - 1) {
+                    metricsListener.onRetry(configUrls[i], lastError);
+                }
+            }
+        }
+
+        throw lastError;
+    }
+
+    /*
+     * Races the configuration urls "happy eyeballs" style: the first url is requested right away and each following
+     * url is started once the previous one failed or staggerMillis went by without an answer. The first successful
+     * response wins and the responses of the requests still in flight are disconnected; a request still waiting for
+     * its response headers disconnects as soon as they arrive.
+     */
+    public static firstSuccessfulHttpGetResult getFirstSuccessfulConfiguration(String[] configUrls, long staggerMillis) throws IOException {
+        return getFirstSuccessfulConfiguration(configUrls, staggerMillis, defaultHttpTransport);
+    }
+
+    public static firstSuccessfulHttpGetResult getFirstSuccessfulConfiguration(String[] configUrls, long staggerMillis, IHttpTransport httpTransport) throws IOException {
+        if (staggerMillis < 0) {
+            throw new IllegalArgumentException("staggerMillis cannot be negative.");
+        }
+
+        return raceFirstSuccessfulHttpGet(configUrls, staggerMillis, httpTransport);
+    }
+
     /*
      * Executes the http GET for URLs in chronological order until the first url succeeds.
      * Returns the result as a JSONObject, if result is json parsable
      */
-    private static firstSuccessfulHttpGetResult executeFirstSuccessfulHttpGet(String[] Urls) throws IOException {
+    private static firstSuccessfulHttpGetResult executeFirstSuccessfulHttpGet(String[] Urls, IHttpTransport httpTransport) throws IOException {
+        if (Urls == null || Urls.length == 0) {
+            throw new IllegalArgumentException("At least one configuration url is required.");
+        }
 
+        IOException lastError = null;
         for (String Url : Urls) {
-            URL requestUri = new URL(Url);
-            URLConnection connection = requestUri.openConnection();
-
             try {
-                StringBuilder content = new StringBuilder();
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                    String line;
-                    while ((line = in.readLine()) != null) {
-                        content.append(line);
-                        content.append(System.lineSeparator());
+                return executeHttpGet(Url, httpTransport);
+            } catch (IOException ex) {
+                lastError = ex;
+            }
+        }
+
+        throw lastError;
+    }
+
+    private static firstSuccessfulHttpGetResult raceFirstSuccessfulHttpGet(String[] Urls, long staggerMillis, IHttpTransport httpTransport) throws IOException {
+        if (Urls == null || Urls.length == 0) {
+            throw new IllegalArgumentException("At least one configuration url is required.");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Urls.length, runnable -> {
+            Thread thread = new Thread(runnable, "internet-analyzer-config-race");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<firstSuccessfulHttpGetResult> completionService = new ExecutorCompletionService<>(executor);
+        HttpGetRace race = new HttpGetRace();
+
+        try {
+            int started = 0;
+            int completed = 0;
+            IOException lastError = null;
+            completionService.submit(racedHttpGet(Urls[started++], httpTransport, race));
+
+            while (completed < Urls.length) {
+                Future<firstSuccessfulHttpGetResult> finished = started < Urls.length
+                        ? completionService.poll(staggerMillis, TimeUnit.MILLISECONDS)
+                        : completionService.take();
+
+                if (finished == null) {
+                    // nothing answered within the stagger delay, give the next url a head start
+                    completionService.submit(racedHttpGet(Urls[started++], httpTransport, race));
+                    continue;
+                }
+
+                completed++;
+                try {
+                    return finished.get();
+                } catch (ExecutionException ex) {
+                    lastError = ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                    if (started < Urls.length) {
+                        completionService.submit(racedHttpGet(Urls[started++], httpTransport, race));
                     }
                 }
+            }
 
-                return new firstSuccessfulHttpGetResult(Url, content.toString());
-            } catch (Exception ex) {
-                throw new IOException("Error executing FirstSuccessful http(s) GET request for: " + Url + " ,Ex: " + ex.toString());
+            throw lastError;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while racing http(s) GET requests.");
+        } finally {
+            race.finish();
+            executor.shutdownNow();
+        }
+    }
+
+    private static Callable<firstSuccessfulHttpGetResult> racedHttpGet(String Url, IHttpTransport httpTransport, HttpGetRace race) {
+        return () -> {
+            IHttpResponse response = httpTransport.send(new HttpRequest("GET", new URL(Url)));
+            if (!race.register(response)) {
+                response.disconnect();
+                throw new IOException("The race was already decided before " + Url + " answered.");
+            }
+
+            try {
+                return readHttpGetResult(Url, response);
             } finally {
-                if (connection instanceof HttpsURLConnection) {
-                    ((HttpsURLConnection) connection).disconnect();
-                } else if (connection instanceof HttpURLConnection) {
-                    ((HttpURLConnection) connection).disconnect();
-                }
+                race.unregister(response);
             }
+        };
+    }
+
+    /*
+     * Responses of the raced requests that are still being read, so that the losers can be disconnected once the
+     * race is decided; interrupting the threads does not stop blocking socket reads.
+     */
+    private static class HttpGetRace {
+        private final Set<IHttpResponse> inFlight = new HashSet<IHttpResponse>();
+        private boolean finished;
+
+        synchronized boolean register(IHttpResponse response) {
+            if (finished) {
+                return false;
+            }
+
+            inFlight.add(response);
+            return true;
         }
 
-        // needs error handling
-        return new firstSuccessfulHttpGetResult("", "");
+        synchronized void unregister(IHttpResponse response) {
+            inFlight.remove(response);
+        }
 
+        synchronized void finish() {
+            finished = true;
+            for (IHttpResponse response : inFlight) {
+                response.disconnect();
+            }
+            inFlight.clear();
+        }
     }
 
-    private static firstSuccessfulHttpGetResult tryUploadReport(String reportData, JSONArray uploadEndpoints, String uploadEndpointPrefix) throws JSONException, IOException {
-        String[] uploadReports = new String[uploadEndpoints.length()];
+    private static firstSuccessfulHttpGetResult executeHttpGet(String Url, IHttpTransport httpTransport) throws IOException {
+        return readHttpGetResult(Url, httpTransport.send(new HttpRequest("GET", new URL(Url))));
+    }
+
+    private static firstSuccessfulHttpGetResult readHttpGetResult(String Url, IHttpResponse response) throws IOException {
+        try {
+            return new firstSuccessfulHttpGetResult(Url, readResponse(response));
+        } catch (Exception ex) {
+            throw new IOException("Error executing FirstSuccessful http(s) GET request for: " + Url + " ,Ex: " + ex.toString());
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private static String readResponse(IHttpResponse response) throws IOException {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(response.getBody()))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                content.append(line);
+                content.append(System.lineSeparator());
+            }
+        }
+
+        return content.toString();
+    }
+
+    private static firstSuccessfulHttpGetResult tryUploadReport(String reportData, JSONArray uploadEndpoints, String uploadEndpointPrefix, IHttpTransport httpTransport, IMetricsListener metricsListener) throws JSONException, IOException {
+        requireUploadEndpoints(uploadEndpoints);
+        IOException lastError = null;
         for (int i = 0; i < uploadEndpoints.length(); i++) {
             StringBuilder uploadResult = new StringBuilder();
             uploadResult.append(uploadEndpointPrefix);
@@ -99,38 +450,391 @@ public class InternetAnalyzerClient {
             uploadResult.append("?");
             uploadResult.append(reportData);
 
-            uploadReports[i] = uploadResult.toString();
+            try {
+                return executeReportHttpGet(uploadResult.toString(), httpTransport, metricsListener);
+            } catch (IOException ex) {
+                if (i < uploadEndpoints.length() - 1) {
+                    metricsListener.onRetry(uploadResult.toString(), ex);
+                }
+                lastError = preferRetryableError(lastError, ex);
+            }
+        }
+
+        throw lastError;
+    }
+
+    /*
+     * A report without upload endpoints can never be uploaded, so it is refused up front instead of being journaled.
+     */
+    private static void requireUploadEndpoints(JSONArray uploadEndpoints) {
+        if (uploadEndpoints == null || uploadEndpoints.length() == 0) {
+            throw new IllegalArgumentException("At least one report upload endpoint is required.");
+        }
+    }
+
+    static firstSuccessfulHttpGetResult uploadReport(List<IReportItem> reportItems, String monitorId, String tag, JSONArray uploadEndpoints, String uploadEndpointPrefix, IHttpTransport httpTransport, ReportUploadMode reportUploadMode, ReportJournal reportJournal) throws JSONException, IOException {
+        return uploadReport(reportItems, monitorId, tag, uploadEndpoints, uploadEndpointPrefix, httpTransport, reportUploadMode, reportJournal, IMetricsListener.NONE);
+    }
+
+    static firstSuccessfulHttpGetResult uploadReport(List<IReportItem> reportItems, String monitorId, String tag, JSONArray uploadEndpoints, String uploadEndpointPrefix, IHttpTransport httpTransport, ReportUploadMode reportUploadMode, ReportJournal reportJournal, IMetricsListener metricsListener) throws JSONException, IOException {
+        requireUploadEndpoints(uploadEndpoints);
+        String reportId = UUID.randomUUID().toString().replace("-", "");
+        String reportData = null;
+        String reportMetadata = null;
+        byte[] reportBody = null;
+        try {
+            if (reportUploadMode == ReportUploadMode.GET) {
+                reportData = formatReport(reportItems, monitorId, tag, reportId, metricsListener);
+                return tryUploadReport(reportData, uploadEndpoints, uploadEndpointPrefix, httpTransport, metricsListener);
+            }
+
+            reportMetadata = formatReportMetadata(monitorId, tag, reportId);
+            long formatStart = System.nanoTime();
+            reportBody = compressReportData(reportItems, reportUploadMode);
+            metricsListener.onReportFormatted(reportItems.size(), reportBody.length, System.nanoTime() - formatStart);
+            return tryPostReport(reportMetadata, reportBody, () -> formatReport(reportItems, monitorId, tag, reportId, metricsListener),
+                    uploadEndpoints, uploadEndpointPrefix, httpTransport, reportUploadMode, metricsListener);
+        } catch (ReportRejectedException ex) {
+            // every upload endpoint rejected the report, a replay would be rejected as well
+            throw ex;
+        } catch (IOException ex) {
+            if (reportJournal != null) {
+                JSONObject journaledReport = new JSONObject();
+                journaledReport.put("p", uploadEndpointPrefix);
+                journaledReport.put("r", uploadEndpoints);
+                if (reportBody != null) {
+                    // replayed as the same POST, a large batch would not fit in a GET query string
+                    journaledReport.put("m", reportUploadMode.name());
+                    journaledReport.put("q", reportMetadata);
+                    journaledReport.put("b", Base64.getEncoder().encodeToString(reportBody));
+                } else {
+                    journaledReport.put("d", reportData != null ? reportData : formatReport(reportItems, monitorId, tag, reportId));
+                }
+                reportJournal.append(journaledReport.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            throw ex;
+        }
+    }
+
+    /*
+     * Posts the compressed DATA array to the upload endpoints in order until one accepts it. An endpoint that
+     * rejects the POST itself is retried with a GET of the same report, the GET query is only built when needed.
+     */
+    private static firstSuccessfulHttpGetResult tryPostReport(String reportMetadata, byte[] reportBody, GetReportData getReportDataSource, JSONArray uploadEndpoints, String uploadEndpointPrefix, IHttpTransport httpTransport, ReportUploadMode reportUploadMode, IMetricsListener metricsListener) throws JSONException, IOException {
+        requireUploadEndpoints(uploadEndpoints);
+        String getReportData = null;
+        IOException lastError = null;
+
+        for (int i = 0; i < uploadEndpoints.length(); i++) {
+            String uploadEndpoint = uploadEndpointPrefix + uploadEndpoints.get(i);
+            try {
+                firstSuccessfulHttpGetResult result = executeHttpPost(uploadEndpoint + "?" + reportMetadata, reportBody, reportUploadMode, httpTransport, metricsListener);
+                if (result != null) {
+                    return result;
+                }
+
+                if (getReportData == null) {
+                    getReportData = getReportDataSource.format();
+                }
+                return executeReportHttpGet(uploadEndpoint + "?" + getReportData, httpTransport, metricsListener);
+            } catch (IOException ex) {
+                if (i < uploadEndpoints.length() - 1) {
+                    metricsListener.onRetry(uploadEndpoint, ex);
+                }
+                lastError = preferRetryableError(lastError, ex);
+            }
         }
 
-        return executeFirstSuccessfulHttpGet(uploadReports);
+        throw lastError;
     }
 
-   private static String formatReport(List<IReportItem> reportItems, String monitorId, String tag) throws JSONException, UnsupportedEncodingException {
-        StringBuilder result = new StringBuilder();
-        result.append("MonitorID=").append(monitorId);
-        result.append("&rid=").append(UUID.randomUUID().toString().replace("-", ""));
-        result.append("&w3c=").append("true");
-        result.append("&prot=").append("https:");
+    private static firstSuccessfulHttpGetResult executeReportHttpGet(String Url, IHttpTransport httpTransport, IMetricsListener metricsListener) throws IOException {
+        long start = System.nanoTime();
+        int statusCode = -1;
+        boolean success = false;
+        try {
+            IHttpResponse response = httpTransport.send(new HttpRequest("GET", new URL(Url)));
+            try {
+                statusCode = response.getStatusCode();
+                if (isRejectedReportStatus(statusCode)) {
+                    throw new ReportRejectedException("Report rejected with status " + statusCode + " by: " + Url.substring(0, Url.indexOf('?')));
+                }
 
-        result.append("&v=");
-        appendEncodedValue(result, "InternetAnalyzer-Android-App:" + InternetAnalyzerClient.class.getPackage().getImplementationVersion());
+                firstSuccessfulHttpGetResult result = new firstSuccessfulHttpGetResult(Url, readResponse(response));
+                success = true;
+                return result;
+            } catch (ReportRejectedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException("Error executing FirstSuccessful http(s) GET request for: " + Url + " ,Ex: " + ex.toString());
+            } finally {
+                response.disconnect();
+            }
+        } finally {
+            metricsListener.onReportUploaded(Url.substring(0, Url.indexOf('?')), ReportUploadMode.GET, statusCode, Url.length(), System.nanoTime() - start, success);
+        }
+    }
 
-        result.append("&tag=");
-        appendEncodedValue(result, tag);
+    /*
+     * Returns null when the collector does not take POSTed or compressed reports.
+     */
+    private static firstSuccessfulHttpGetResult executeHttpPost(String Url, byte[] body, ReportUploadMode reportUploadMode, IHttpTransport httpTransport, IMetricsListener metricsListener) throws IOException {
+        long start = System.nanoTime();
+        int statusCode = -1;
+        firstSuccessfulHttpGetResult result = null;
+        try {
+            HttpRequest request = new HttpRequest("POST", new URL(Url));
+            request.setHeader("Content-Type", "application/json; charset=utf-8");
+            request.setHeader("Content-Encoding", reportUploadMode.getContentEncoding());
+            request.setBody(body);
+            IHttpResponse response = httpTransport.send(request);
 
-        result.append("&DATA=");
-        JSONArray data = new JSONArray();
+            try {
+                statusCode = response.getStatusCode();
+                switch (statusCode) {
+                    case HttpURLConnection.HTTP_BAD_METHOD:
+                    case HttpURLConnection.HTTP_LENGTH_REQUIRED:
+                    case HttpURLConnection.HTTP_UNSUPPORTED_TYPE:
+                    case HttpURLConnection.HTTP_NOT_IMPLEMENTED:
+                        return null;
+                    default:
+                        if (isRejectedReportStatus(statusCode)) {
+                            throw new ReportRejectedException("Report rejected with status " + statusCode + " by: " + Url.substring(0, Url.indexOf('?')));
+                        }
+
+                        result = new firstSuccessfulHttpGetResult(Url, readResponse(response));
+                        return result;
+                }
+            } catch (ReportRejectedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException("Error executing http(s) POST request for: " + Url + " ,Ex: " + ex.toString());
+            } finally {
+                response.disconnect();
+            }
+        } finally {
+            metricsListener.onReportUploaded(Url.substring(0, Url.indexOf('?')), reportUploadMode, statusCode, body.length, System.nanoTime() - start, result != null);
+        }
+    }
 
+    private static byte[] compressReportData(List<IReportItem> reportItems, ReportUploadMode reportUploadMode) throws JSONException, IOException {
+        ReportWriter writer = new ReportWriter(false);
+        writer.beginArray();
         for (IReportItem reportItem : reportItems) {
-            data.put(reportItem.getFormattedReportItem());
+            reportItem.writeReportItem(writer);
         }
+        writer.endArray();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, writer.size() / 4));
+        try (OutputStream out = reportUploadMode == ReportUploadMode.POST_GZIP
+                ? new GZIPOutputStream(compressed)
+                : new DeflaterOutputStream(compressed)) {
+            writer.writeTo(out);
+        }
+
+        return compressed.toByteArray();
+    }
 
-        appendEncodedValue(result, data.toString());
-        return result.toString();
+    private static String decompressReportData(byte[] reportBody, ReportUploadMode reportUploadMode) throws IOException {
+        ByteArrayOutputStream reportData = new ByteArrayOutputStream(reportBody.length * 4);
+        try (InputStream in = reportUploadMode == ReportUploadMode.POST_GZIP
+                ? new GZIPInputStream(new ByteArrayInputStream(reportBody))
+                : new InflaterInputStream(new ByteArrayInputStream(reportBody))) {
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                reportData.write(buffer, 0, bytesRead);
+            }
+        }
+
+        return new String(reportData.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /*
+     * A 4xx other than a timeout or rate limit means the collector will not take the report, however often it is sent.
+     */
+    private static boolean isRejectedReportStatus(int statusCode) {
+        return statusCode / 100 == 4 && statusCode != 408 && statusCode != 429;
     }
 
-    private static void appendEncodedValue(StringBuilder result, String value) throws UnsupportedEncodingException {
-        result.append(URLEncoder.encode(value, StandardCharsets.UTF_8.toString()));
+    /*
+     * The error to report once every upload endpoint failed: a rejection only when every endpoint rejected.
+     */
+    private static IOException preferRetryableError(IOException lastError, IOException error) {
+        return lastError == null || !(error instanceof ReportRejectedException) ? error : lastError;
+    }
+
+    private static String formatReportMetadata(String monitorId, String tag, String reportId) {
+        ReportWriter writer = reportWriters.get();
+        writer.reset();
+        writeReportMetadata(writer, monitorId, tag, reportId);
+        return writer.toString();
+    }
+
+    /*
+     * Streams the report query into a per thread ReportWriter, the buffer is reused across reports unless a single
+     * report made it grow past maxRetainedReportBufferSize.
+     */
+    static String formatReport(List<IReportItem> reportItems, String monitorId, String tag, String reportId) throws JSONException {
+        ReportWriter writer = reportWriters.get();
+        writer.reset();
+        try {
+            writeReportMetadata(writer, monitorId, tag, reportId);
+
+            writer.appendRaw("&DATA=");
+            writer.beginArray();
+            for (IReportItem reportItem : reportItems) {
+                reportItem.writeReportItem(writer);
+            }
+            writer.endArray();
+
+            return writer.toString();
+        } finally {
+            if (writer.capacity() > maxRetainedReportBufferSize) {
+                reportWriters.remove();
+            }
+        }
+    }
+
+    private static String formatReport(List<IReportItem> reportItems, String monitorId, String tag, String reportId, IMetricsListener metricsListener) throws JSONException {
+        long start = System.nanoTime();
+        String reportData = formatReport(reportItems, monitorId, tag, reportId);
+        metricsListener.onReportFormatted(reportItems.size(), reportData.length(), System.nanoTime() - start);
+        return reportData;
+    }
+
+    private static void writeReportMetadata(ReportWriter writer, String monitorId, String tag, String reportId) {
+        writer.appendRaw("MonitorID=").appendRaw(monitorId);
+        writer.appendRaw("&rid=").appendRaw(reportId);
+        writer.appendRaw("&w3c=").appendRaw("true");
+        writer.appendRaw("&prot=").appendRaw("https:");
+        writer.appendRaw(reportVersionParameter);
+
+        writer.appendRaw("&tag=");
+        writer.appendText(tag);
+    }
+
+    /*
+     * Builds an InternetAnalyzerClient. Only the configuration urls are required; the defaults match the static
+     * execute(monitorId, tag, configUrls).
+     */
+    public static class Builder {
+        private String[] configUrls;
+        private String reportUploadPrefix = reportUploadUrlScheme;
+        private IHttpTransport httpTransport = defaultHttpTransport;
+        private IHttpTransport measurementHttpTransport;
+        private ConfigurationCache configurationCache;
+        private ReportUploadMode reportUploadMode = ReportUploadMode.GET;
+        private ReportJournal reportJournal;
+        private IMetricsListener metricsListener = IMetricsListener.NONE;
+        private int measurementConcurrency = 1;
+        private String xhrOrigin;
+
+        private Builder() {
+        }
+
+        public Builder configUrls(String... configUrls) {
+            this.configUrls = configUrls;
+            return this;
+        }
+
+        public Builder reportUploadPrefix(String reportUploadPrefix) {
+            this.reportUploadPrefix = reportUploadPrefix;
+            return this;
+        }
+
+        /*
+         * Transport for the configuration fetch and the report upload.
+         */
+        public Builder httpTransport(IHttpTransport httpTransport) {
+            this.httpTransport = httpTransport;
+            return this;
+        }
+
+        /*
+         * Transport for the measurements, a UrlConnectionHttpTransport unless set. A SocketHttpTransport times every
+         * connection phase and lets warm fetches reuse the cold fetch's connection, but bypasses proxy settings.
+         */
+        public Builder measurementHttpTransport(IHttpTransport measurementHttpTransport) {
+            this.measurementHttpTransport = measurementHttpTransport;
+            return this;
+        }
+
+        public Builder configurationCache(ConfigurationCache configurationCache) {
+            this.configurationCache = configurationCache;
+            return this;
+        }
+
+        public Builder reportUploadMode(ReportUploadMode reportUploadMode) {
+            this.reportUploadMode = reportUploadMode;
+            return this;
+        }
+
+        public Builder reportJournal(ReportJournal reportJournal) {
+            this.reportJournal = reportJournal;
+            return this;
+        }
+
+        /*
+         * Receives the phase timings and outcomes of every execution of the client.
+         */
+        public Builder metricsListener(IMetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /*
+         * Number of endpoints measured in parallel within one execution; 1, the default, measures them one after
+         * the other.
+         */
+        public Builder measurementConcurrency(int measurementConcurrency) {
+            this.measurementConcurrency = measurementConcurrency;
+            return this;
+        }
+
+        /*
+         * Page origin of the XHR measurements, XhrMeasurement.defaultOrigin unless set.
+         */
+        public Builder xhrOrigin(String xhrOrigin) {
+            this.xhrOrigin = xhrOrigin;
+            return this;
+        }
+
+        public InternetAnalyzerClient build() {
+            if (configUrls == null || configUrls.length == 0) {
+                throw new IllegalArgumentException("At least one configuration url is required.");
+            }
+
+            if (reportUploadPrefix == null || reportUploadPrefix.isEmpty() || httpTransport == null || reportUploadMode == null || metricsListener == null) {
+                throw new IllegalArgumentException("reportUploadPrefix, httpTransport, reportUploadMode and metricsListener cannot be empty.");
+            }
+
+            if (measurementConcurrency < 1) {
+                throw new IllegalArgumentException("measurementConcurrency must be greater than 0.");
+            }
+
+            if (xhrOrigin != null && xhrOrigin.isEmpty()) {
+                throw new IllegalArgumentException("xhrOrigin cannot be empty.");
+            }
+
+            return new InternetAnalyzerClient(this);
+        }
+    }
+
+    /*
+     * Builds the GET query of a report whose POST the collector did not take.
+     */
+    private interface GetReportData {
+        String format() throws IOException;
+    }
+
+    /*
+     * The collector answered with a 4xx that retrying will not change.
+     */
+    private static class ReportRejectedException extends IOException {
+        ReportRejectedException(String message) {
+            super(message);
+        }
     }
 
     public static class firstSuccessfulHttpGetResult {
@@ -0,0 +1,257 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/*
+ * Queries DNS servers directly through JNDI's DNS provider, bypassing the InetAddress cache in both directions: the
+ * lookup is never answered from it and its result is never added to it. The A and AAAA queries are sent in parallel
+ * and the CNAME chain comes with their answers. The contexts they run on are shared by all threads through a small
+ * idle pool; a pair that comes back from a failed lookup, or that the pool has no room for, is closed.
+ */
+public final class JndiDnsResolver implements IDnsResolver {
+
+    private static final String dnsContextFactory = "com.sun.jndi.dns.DnsContextFactory";
+    private static final ExecutorService queryExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "internet-analyzer-dns");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int maxIdleContexts = 4;
+
+    private final Hashtable<String, String> environment = new Hashtable<String, String>();
+    private final ConcurrentLinkedQueue<DirContext[]> idleContexts = new ConcurrentLinkedQueue<DirContext[]>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /*
+     * Uses the DNS servers of the operating system's resolver configuration.
+     */
+    public JndiDnsResolver() {
+        this(new String[0]);
+    }
+
+    /*
+     * Uses the given DNS servers, each a host or host:port, tried in order.
+     */
+    public JndiDnsResolver(String... dnsServers) {
+        environment.put(Context.INITIAL_CONTEXT_FACTORY, dnsContextFactory);
+        environment.put("com.sun.jndi.dns.timeout.retries", "2");
+        if (dnsServers.length > 0) {
+            StringBuilder providerUrl = new StringBuilder();
+            for (String dnsServer : dnsServers) {
+                if (providerUrl.length() > 0) {
+                    providerUrl.append(' ');
+                }
+
+                providerUrl.append("dns://").append(dnsServer);
+            }
+
+            environment.put(Context.PROVIDER_URL, providerUrl.toString());
+        }
+    }
+
+    /*
+     * The resolver measurements use unless one is set on their MeasurementContext: created by createDefault on first
+     * use and shared from then on.
+     */
+    public static IDnsResolver getDefault() {
+        return DefaultResolver.instance;
+    }
+
+    /*
+     * A JndiDnsResolver where the DNS provider is available, IDnsResolver.SYSTEM otherwise.
+     */
+    public static IDnsResolver createDefault() {
+        try {
+            Class.forName(dnsContextFactory);
+            return new JndiDnsResolver();
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return IDnsResolver.SYSTEM;
+        }
+    }
+
+    /*
+     * Makes sure a pair of DNS contexts is idle, so that a timed lookup right after only measures the queries.
+     */
+    @Override
+    public void prepare() throws IOException {
+        releaseContexts(acquireContexts());
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws IOException {
+        if (isAddressLiteral(host)) {
+            // nothing to query, the literal is parsed as it is
+            return new InetAddress[]{InetAddress.getByName(host)};
+        }
+
+        DirContext[] familyContexts = acquireContexts();
+        Future<Attribute> aaaaLookup = queryExecutor.submit(() -> lookup(familyContexts[1], host, "AAAA"));
+        boolean reusable = true;
+        try {
+            List<InetAddress> addresses = new ArrayList<InetAddress>();
+            addAddresses(host, lookup(familyContexts[0], host, "A"), addresses);
+            addAddresses(host, aaaaLookup.get(), addresses);
+            if (addresses.isEmpty()) {
+                throw new UnknownHostException(host);
+            }
+
+            return addresses.toArray(new InetAddress[addresses.size()]);
+        } catch (NamingException ex) {
+            reusable = false;
+            throw toIOException(host, ex);
+        } catch (ExecutionException ex) {
+            throw toIOException(host, ex.getCause());
+        } catch (InterruptedException ex) {
+            reusable = false;
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resolving " + host);
+        } finally {
+            if (reusable) {
+                releaseContexts(familyContexts);
+            } else {
+                closeWhenDone(familyContexts, aaaaLookup);
+            }
+        }
+    }
+
+    /*
+     * One context per address family, the A query runs on the calling thread and the AAAA query on queryExecutor.
+     */
+    private DirContext[] acquireContexts() throws IOException {
+        DirContext[] familyContexts = idleContexts.poll();
+        if (familyContexts != null) {
+            idleCount.decrementAndGet();
+            return familyContexts;
+        }
+
+        DirContext aContext = null;
+        try {
+            aContext = new InitialDirContext(environment);
+            return new DirContext[]{aContext, new InitialDirContext(environment)};
+        } catch (NamingException ex) {
+            close(aContext);
+            throw new IOException("Cannot create the DNS context", ex);
+        }
+    }
+
+    private void releaseContexts(DirContext[] familyContexts) {
+        if (idleCount.incrementAndGet() <= maxIdleContexts) {
+            idleContexts.offer(familyContexts);
+        } else {
+            idleCount.decrementAndGet();
+            close(familyContexts);
+        }
+    }
+
+    /*
+     * The AAAA query may still be running on its context after a failed lookup, so the pair is closed once it ended.
+     */
+    private static void closeWhenDone(DirContext[] familyContexts, Future<Attribute> aaaaLookup) {
+        if (aaaaLookup.isDone()) {
+            close(familyContexts);
+            return;
+        }
+
+        queryExecutor.execute(() -> {
+            try {
+                aaaaLookup.get();
+            } catch (ExecutionException | InterruptedException ex) {
+                // closed either way
+            }
+            close(familyContexts);
+        });
+    }
+
+    private static void close(DirContext... contexts) {
+        for (DirContext context : contexts) {
+            if (context == null) {
+                continue;
+            }
+
+            try {
+                context.close();
+            } catch (NamingException ex) {
+                // nothing left to release
+            }
+        }
+    }
+
+    /*
+     * The records of one type. A recursive server answers a name that is an alias with the whole CNAME chain and
+     * the records of its target, and the records of the queried type are taken from that answer as they are.
+     */
+    private static Attribute lookup(DirContext context, String host, String type) throws NamingException {
+        return context.getAttributes(host, new String[]{type}).get(type);
+    }
+
+    /*
+     * An IPv6 literal contains a ":", an IPv4 literal only digits and dots; neither is a name a DNS server knows.
+     */
+    private static boolean isAddressLiteral(String host) {
+        if (host.indexOf(':') >= 0) {
+            return true;
+        }
+
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+
+        return !host.isEmpty();
+    }
+
+    private static IOException toIOException(String host, Throwable ex) {
+        if (ex instanceof NameNotFoundException) {
+            return new UnknownHostException(host);
+        }
+
+        return ex instanceof IOException ? (IOException) ex : new IOException("DNS lookup failed for " + host, ex);
+    }
+
+    private static void addAddresses(String host, Attribute records, List<InetAddress> addresses) throws NamingException, UnknownHostException {
+        if (records == null) {
+            return;
+        }
+
+        NamingEnumeration<?> values = records.getAll();
+        while (values.hasMore()) {
+            // a literal is parsed without a lookup and does not touch the InetAddress cache
+            byte[] address = InetAddress.getByName(values.next().toString()).getAddress();
+            addresses.add(InetAddress.getByAddress(host, address));
+        }
+    }
+
+    private static final class DefaultResolver {
+        static final IDnsResolver instance = createDefault();
+    }
+}
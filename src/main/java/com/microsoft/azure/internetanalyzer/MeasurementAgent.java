@@ -12,60 +12,137 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.security.cert.CertificateEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MeasurementAgent {
-    private List<MeasurementEndpoint> measurementEndpoints = new ArrayList<MeasurementEndpoint>();
-    private List<IReportItem> reportItems = new ArrayList<IReportItem>();
-    private int sumEndpointWeight = 0;
-    private Random rand = new Random();
-    private int measurementNum;
-    private JSONArray uploadEndpoints;
+    private static final AtomicInteger measurementThreadCount = new AtomicInteger();
+
+    private final MeasurementConfiguration configuration;
+    private final MeasurementContext context;
+    private final List<IReportItem> reportItems = new ArrayList<IReportItem>();
+    private final Random random;
 
     public MeasurementAgent(JSONObject measurementConfigurations) throws JSONException {
-        this.measurementNum = measurementConfigurations.getInt("n");
-        this.uploadEndpoints = measurementConfigurations.getJSONArray("r");
-        JSONArray measurementEndpointsArr = measurementConfigurations.getJSONArray("e");
-        for (int i = 0; i < measurementEndpointsArr.length(); i++) {
-            JSONObject measurementEndpointObj = measurementEndpointsArr.getJSONObject(i);
-            int measurementEndpointType = measurementEndpointObj.getInt("m");
-            int measurementEndpointWeight = measurementEndpointObj.getInt("w");
-            String experimentId = measurementEndpointObj.optString("ex");
-            String objectPath = measurementEndpointObj.optString("o");
-
-            if (MeasurementTypes.isSupportedMeasurementType(measurementEndpointType)) {
-                this.measurementEndpoints.add(new MeasurementEndpoint(
-                        measurementEndpointWeight,
-                        measurementEndpointObj.getString("e"),
-                        measurementEndpointType,
-                        experimentId,
-                        objectPath));
-                sumEndpointWeight += measurementEndpointWeight;
-            }
-        }
+        this(new MeasurementConfiguration(measurementConfigurations));
+    }
 
-        if (measurementEndpointsArr.length() < this.measurementNum) {
-            this.measurementNum = measurementEndpointsArr.length();
-        }
+    public MeasurementAgent(JSONObject measurementConfigurations, MeasurementContext context) throws JSONException {
+        this(new MeasurementConfiguration(measurementConfigurations), context);
+    }
+
+    public MeasurementAgent(MeasurementConfiguration configuration) {
+        this(configuration, new MeasurementContext());
+    }
+
+    public MeasurementAgent(MeasurementConfiguration configuration, MeasurementContext context) {
+        this(configuration, context, new Random());
+    }
+
+    /*
+     * A seeded random makes the endpoint selection reproducible.
+     */
+    public MeasurementAgent(MeasurementConfiguration configuration, MeasurementContext context, Random random) {
+        this.configuration = configuration;
+        this.context = context;
+        this.random = random;
+    }
+
+    public MeasurementConfiguration getConfiguration() {
+        return configuration;
     }
 
     public JSONArray getUploadEndpoints() {
-        return uploadEndpoints;
+        return configuration.getUploadEndpoints();
+    }
+
+    public MeasurementContext getContext() {
+        return context;
     }
 
     public List<MeasurementEndpoint> getMeasurementEndpoints() {
-        return measurementEndpoints;
+        return configuration.getMeasurementEndpoints();
     }
 
     public void PerformMeasurements() throws IOException, CertificateEncodingException {
-        if (measurementNum <= measurementEndpoints.size()) {
-            for (int i = 0; i < measurementNum; i++) {
-                MeasurementEndpoint measurementEndpoint = getRandomMeasurementEndpoint();
-                measurementEndpoint.takeAndReportMeasurements(reportItems);
+        for (MeasurementEndpoint measurementEndpoint : selectMeasurementEndpoints()) {
+            measurementEndpoint.takeAndReportMeasurements(reportItems, context);
+        }
+    }
+
+    /*
+     * Takes the measurements of the selected endpoints in parallel, using at most maxConcurrency threads.
+     * Cold and warm fetches of the same url are still taken one after the other on a single thread.
+     */
+    public void PerformMeasurements(int maxConcurrency) throws IOException, CertificateEncodingException {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0.");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(configuration.getMeasurementNum(), maxConcurrency)), newMeasurementThreadFactory());
+        try {
+            PerformMeasurements(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Takes the measurements of the selected endpoints in parallel on the given executor. Report items are added in
+     * endpoint selection order once every measurement completed; the first measurement error is rethrown afterwards.
+     */
+    public void PerformMeasurements(ExecutorService executor) throws IOException, CertificateEncodingException {
+        List<MeasurementEndpoint> selectedEndpoints = selectMeasurementEndpoints();
+        List<List<IReportItem>> endpointReportItems = new ArrayList<List<IReportItem>>(selectedEndpoints.size());
+        List<Future<?>> pendingMeasurements = new ArrayList<Future<?>>(selectedEndpoints.size());
+        for (final MeasurementEndpoint measurementEndpoint : selectedEndpoints) {
+            final List<IReportItem> items = new ArrayList<IReportItem>();
+            endpointReportItems.add(items);
+            pendingMeasurements.add(executor.submit(() -> {
+                measurementEndpoint.takeAndReportMeasurements(items, context);
+                return null;
+            }));
+        }
+
+        Throwable firstError = null;
+        for (int i = 0; i < pendingMeasurements.size(); i++) {
+            try {
+                pendingMeasurements.get(i).get();
+            } catch (InterruptedException ex) {
+                for (Future<?> pendingMeasurement : pendingMeasurements) {
+                    pendingMeasurement.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for measurements to complete.");
+            } catch (ExecutionException ex) {
+                if (firstError == null) {
+                    firstError = ex.getCause();
+                }
             }
+
+            // measurements that failed half way still report what they collected, same as the sequential path
+            reportItems.addAll(endpointReportItems.get(i));
+        }
+
+        if (firstError instanceof IOException) {
+            throw (IOException) firstError;
+        } else if (firstError instanceof CertificateEncodingException) {
+            throw (CertificateEncodingException) firstError;
+        } else if (firstError instanceof RuntimeException) {
+            throw (RuntimeException) firstError;
+        } else if (firstError instanceof Error) {
+            throw (Error) firstError;
+        } else if (firstError != null) {
+            throw new IOException("Error taking measurements", firstError);
         }
     }
 
@@ -73,22 +150,41 @@ public class MeasurementAgent {
         return reportItems;
     }
 
-    private MeasurementEndpoint getRandomMeasurementEndpoint() {
-        if (!measurementEndpoints.isEmpty()) {
-            int randomNum = rand.nextInt(sumEndpointWeight);
-            int accumulatedWeight = 0;
-            for (MeasurementEndpoint endpoint : measurementEndpoints) {
-                int endpointWeight = endpoint.getWeight();
-                accumulatedWeight += endpointWeight;
-                if (randomNum < accumulatedWeight) {
-                    sumEndpointWeight = sumEndpointWeight - endpointWeight;
-                    measurementEndpoints.remove(endpoint);
-                    return endpoint;
-                }
-            }
+    /*
+     * Picks measurementNum distinct endpoints, each with a probability proportional to its weight. Nothing is
+     * measured when the configuration asks for more measurements than it has endpoints the context can measure, and
+     * endpoints of weight 0 are never picked. Traceroute-only endpoints are left out when there is no traceroute probe.
+     */
+    List<MeasurementEndpoint> selectMeasurementEndpoints() {
+        int measurementNum = configuration.getMeasurementNum();
+        List<MeasurementEndpoint> measurementEndpoints = configuration.getMeasurementEndpoints();
+        List<MeasurementEndpoint> selectedEndpoints = new ArrayList<MeasurementEndpoint>(measurementNum);
+        boolean hasTracerouteProbe = context.getTracerouteProbe() != null;
+        if (measurementNum > configuration.getMeasurableEndpointCount(hasTracerouteProbe)) {
+            return selectedEndpoints;
         }
 
-        // should never reach this point
-        throw new IllegalStateException("getRandomMeasurementEndpoint() cannot return valid measurement endpoint.");
+        WeightedSampler sampler = new WeightedSampler(configuration.getCumulativeWeights(hasTracerouteProbe), random);
+        while (selectedEndpoints.size() < measurementNum && sampler.hasNext()) {
+            selectedEndpoints.add(measurementEndpoints.get(sampler.next()));
+        }
+
+        return selectedEndpoints;
+    }
+
+    /*
+     * Uses virtual threads when running on JDK 21+ and falls back to daemon platform threads otherwise.
+     */
+    private static ThreadFactory newMeasurementThreadFactory() {
+        try {
+            Object virtualThreadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(virtualThreadBuilder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return runnable -> {
+                Thread thread = new Thread(runnable, "internet-analyzer-measurement-" + measurementThreadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
     }
 }
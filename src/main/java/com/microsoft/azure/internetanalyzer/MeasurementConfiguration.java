@@ -0,0 +1,145 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Parsed and validated measurement configuration. Instances are immutable, so a single configuration can be shared
+ * by any number of MeasurementAgent runs, also concurrently, without being parsed again.
+ *
+ * Endpoints that could never be measured are dropped while parsing, so they do not take one of the "n" slots: those of
+ * unsupported types and throughput-only endpoints without an object. Traceroute-only endpoints are kept, but given no
+ * weight for runs whose context has no traceroute probe.
+ */
+public final class MeasurementConfiguration {
+    private final int measurementNum;
+    private final List<String> uploadEndpoints;
+    private final List<MeasurementEndpoint> measurementEndpoints;
+    private final int[] cumulativeWeights;
+    private final int[] probelessCumulativeWeights;
+    private final int probelessEndpointCount;
+
+    public MeasurementConfiguration(JSONObject measurementConfigurations) throws JSONException {
+        int measurementNum = measurementConfigurations.getInt("n");
+        if (measurementNum < 0) {
+            throw new JSONException("Measurement count \"n\" cannot be negative.");
+        }
+
+        JSONArray uploadEndpointsArr = measurementConfigurations.getJSONArray("r");
+        List<String> uploadEndpoints = new ArrayList<String>(uploadEndpointsArr.length());
+        for (int i = 0; i < uploadEndpointsArr.length(); i++) {
+            uploadEndpoints.add(uploadEndpointsArr.getString(i));
+        }
+
+        JSONArray measurementEndpointsArr = measurementConfigurations.getJSONArray("e");
+        List<MeasurementEndpoint> measurementEndpoints = new ArrayList<MeasurementEndpoint>(measurementEndpointsArr.length());
+        int[] cumulativeWeights = new int[measurementEndpointsArr.length()];
+        int[] probelessCumulativeWeights = new int[measurementEndpointsArr.length()];
+        int sumEndpointWeight = 0;
+        int sumProbelessEndpointWeight = 0;
+        int tracerouteOnlyEndpointCount = 0;
+        for (int i = 0; i < measurementEndpointsArr.length(); i++) {
+            JSONObject measurementEndpointObj = measurementEndpointsArr.getJSONObject(i);
+            int measurementEndpointType = measurementEndpointObj.getInt("m");
+            int measurementEndpointWeight = measurementEndpointObj.getInt("w");
+            String experimentId = measurementEndpointObj.optString("ex");
+            String objectPath = measurementEndpointObj.optString("o");
+
+            if (measurementEndpointWeight < 0) {
+                throw new JSONException("Measurement endpoint weight \"w\" cannot be negative.");
+            }
+
+            // throughput needs a configured object large enough to leave slow start, it is skipped without one
+            int measurableType = measurementEndpointType;
+            if (objectPath.isEmpty()) {
+                measurableType &= ~(MeasurementTypes.THROUGHPUT_HTTP | MeasurementTypes.THROUGHPUT_HTTPS);
+            }
+
+            if (MeasurementTypes.isSupportedMeasurementType(measurableType)) {
+                if (sumEndpointWeight > Integer.MAX_VALUE - measurementEndpointWeight) {
+                    throw new JSONException("Sum of measurement endpoint weights is too large.");
+                }
+
+                measurementEndpoints.add(new MeasurementEndpoint(
+                        measurementEndpointWeight,
+                        measurementEndpointObj.getString("e"),
+                        measurementEndpointType,
+                        experimentId,
+                        objectPath));
+                sumEndpointWeight += measurementEndpointWeight;
+                cumulativeWeights[measurementEndpoints.size() - 1] = sumEndpointWeight;
+
+                if (MeasurementTypes.isSupportedMeasurementType(measurableType & ~(MeasurementTypes.TRACERT4 | MeasurementTypes.TRACERT6))) {
+                    sumProbelessEndpointWeight += measurementEndpointWeight;
+                } else {
+                    tracerouteOnlyEndpointCount++;
+                }
+                probelessCumulativeWeights[measurementEndpoints.size() - 1] = sumProbelessEndpointWeight;
+            }
+        }
+
+        // the count is capped by all configured endpoints, including the ones of unsupported measurement types
+        this.measurementNum = Math.min(measurementNum, measurementEndpointsArr.length());
+        this.uploadEndpoints = Collections.unmodifiableList(uploadEndpoints);
+        this.measurementEndpoints = Collections.unmodifiableList(measurementEndpoints);
+        this.cumulativeWeights = new int[measurementEndpoints.size()];
+        System.arraycopy(cumulativeWeights, 0, this.cumulativeWeights, 0, this.cumulativeWeights.length);
+        if (tracerouteOnlyEndpointCount == 0) {
+            this.probelessCumulativeWeights = this.cumulativeWeights;
+        } else {
+            this.probelessCumulativeWeights = new int[measurementEndpoints.size()];
+            System.arraycopy(probelessCumulativeWeights, 0, this.probelessCumulativeWeights, 0, this.probelessCumulativeWeights.length);
+        }
+        this.probelessEndpointCount = measurementEndpoints.size() - tracerouteOnlyEndpointCount;
+    }
+
+    public static MeasurementConfiguration parse(String measurementConfigurations) throws JSONException {
+        return new MeasurementConfiguration(new JSONObject(measurementConfigurations));
+    }
+
+    public int getMeasurementNum() {
+        return measurementNum;
+    }
+
+    /*
+     * Returns a copy, changes to the returned array do not affect the configuration.
+     */
+    public JSONArray getUploadEndpoints() {
+        return new JSONArray(uploadEndpoints);
+    }
+
+    public List<MeasurementEndpoint> getMeasurementEndpoints() {
+        return measurementEndpoints;
+    }
+
+    public int getTotalWeight() {
+        return cumulativeWeights.length == 0 ? 0 : cumulativeWeights[cumulativeWeights.length - 1];
+    }
+
+    /*
+     * Running sum of the endpoint weights, cumulativeWeights[i] is the weight of endpoints 0..i. Without a traceroute
+     * probe, traceroute-only endpoints count with a weight of 0. Not copied, callers must not modify it.
+     */
+    int[] getCumulativeWeights(boolean hasTracerouteProbe) {
+        return hasTracerouteProbe ? cumulativeWeights : probelessCumulativeWeights;
+    }
+
+    /*
+     * Number of endpoints a run with or without a traceroute probe can measure.
+     */
+    int getMeasurableEndpointCount(boolean hasTracerouteProbe) {
+        return hasTracerouteProbe ? measurementEndpoints.size() : probelessEndpointCount;
+    }
+}
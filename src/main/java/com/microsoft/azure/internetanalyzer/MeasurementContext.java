@@ -0,0 +1,102 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+/*
+ * Collaborators shared by the measurements of a MeasurementAgent run. Measurements use a UrlConnectionHttpTransport,
+ * which honors the platform proxy settings, unless a SocketHttpTransport is passed in.
+ */
+public class MeasurementContext {
+    private IHttpTransport httpTransport;
+    private IMetricsListener metricsListener = IMetricsListener.NONE;
+    private IDnsResolver dnsResolver;
+    private ITracerouteProbe tracerouteProbe;
+    private String xhrOrigin = XhrMeasurement.defaultOrigin;
+    private final MessageDigestPool certificateDigests = new MessageDigestPool("SHA-1", 16);
+
+    public MeasurementContext() {
+        this(new UrlConnectionHttpTransport());
+    }
+
+    public MeasurementContext(IHttpTransport httpTransport) {
+        setHttpTransport(httpTransport);
+    }
+
+    public IHttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    public void setHttpTransport(IHttpTransport httpTransport) {
+        if (httpTransport == null) {
+            throw new IllegalArgumentException("httpTransport cannot be null");
+        }
+
+        this.httpTransport = httpTransport;
+    }
+
+    public IMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public void setMetricsListener(IMetricsListener metricsListener) {
+        if (metricsListener == null) {
+            throw new IllegalArgumentException("metricsListener cannot be null");
+        }
+
+        this.metricsListener = metricsListener;
+    }
+
+    /*
+     * The resolver set on this context, or the shared JndiDnsResolver.getDefault() when none is set.
+     */
+    public IDnsResolver getDnsResolver() {
+        return dnsResolver != null ? dnsResolver : JndiDnsResolver.getDefault();
+    }
+
+    public void setDnsResolver(IDnsResolver dnsResolver) {
+        if (dnsResolver == null) {
+            throw new IllegalArgumentException("dnsResolver cannot be null");
+        }
+
+        this.dnsResolver = dnsResolver;
+    }
+
+    /*
+     * The probe backend for TRACERT4 and TRACERT6, or null when none is set and those measurements are skipped.
+     */
+    public ITracerouteProbe getTracerouteProbe() {
+        return tracerouteProbe;
+    }
+
+    public void setTracerouteProbe(ITracerouteProbe tracerouteProbe) {
+        if (tracerouteProbe == null) {
+            throw new IllegalArgumentException("tracerouteProbe cannot be null");
+        }
+
+        this.tracerouteProbe = tracerouteProbe;
+    }
+
+    /*
+     * The page origin XHRHTTP and XHRHTTPS measurements send their requests from.
+     */
+    public String getXhrOrigin() {
+        return xhrOrigin;
+    }
+
+    public void setXhrOrigin(String xhrOrigin) {
+        if (xhrOrigin == null || xhrOrigin.isEmpty()) {
+            throw new IllegalArgumentException("xhrOrigin cannot be empty");
+        }
+
+        this.xhrOrigin = xhrOrigin;
+    }
+
+    MessageDigestPool getCertificateDigests() {
+        return certificateDigests;
+    }
+}
@@ -5,11 +5,11 @@ import java.security.cert.CertificateEncodingException;
 import java.util.List;
 
 public class MeasurementEndpoint {
-    private int weight;
-    private String endpoint;
-    private int measurementType;
-    private String experimentId;
-    private String objectPath;
+    private final int weight;
+    private final String endpoint;
+    private final int measurementType;
+    private final String experimentId;
+    private final String objectPath;
 
     public MeasurementEndpoint(int weight, String endpoint, int measurementType, String experimentId, String objectPath) {
         this.weight = weight;
@@ -24,9 +24,45 @@ public class MeasurementEndpoint {
     }
 
     public void takeAndReportMeasurements(List<IReportItem> reportItems) throws IOException, CertificateEncodingException {
+        takeAndReportMeasurements(reportItems, new MeasurementContext());
+    }
+
+    public void takeAndReportMeasurements(List<IReportItem> reportItems, MeasurementContext context) throws IOException, CertificateEncodingException {
         if (MeasurementTypes.isFetchMeasurementType(measurementType)) {
-            FetchMeasurement fetchMeasurement = new FetchMeasurement(endpoint, measurementType, experimentId, objectPath);
+            FetchMeasurement fetchMeasurement = new FetchMeasurement(endpoint, measurementType, experimentId, objectPath, context);
             fetchMeasurement.takeAndReportMeasurements(reportItems);
         }
+
+        if (MeasurementTypes.isRttMeasurementType(measurementType)) {
+            RttMeasurement rttMeasurement = new RttMeasurement(endpoint, experimentId, objectPath, context);
+            rttMeasurement.takeAndReportMeasurements(reportItems);
+        }
+
+        // throughput needs a configured object large enough to leave slow start, it is skipped without one
+        if (MeasurementTypes.isThroughputMeasurementType(measurementType) && objectPath != null && !objectPath.isEmpty()) {
+            ThroughputMeasurement throughputMeasurement = new ThroughputMeasurement(endpoint, measurementType, experimentId, objectPath, context);
+            throughputMeasurement.takeAndReportMeasurements(reportItems);
+        }
+
+        if (MeasurementTypes.isDnsMeasurementType(measurementType)) {
+            DnsMeasurement dnsMeasurement = new DnsMeasurement(endpoint, experimentId, context);
+            dnsMeasurement.takeAndReportMeasurements(reportItems);
+        }
+
+        if (MeasurementTypes.isProbeTrainMeasurementType(measurementType)) {
+            ProbeTrainMeasurement probeTrainMeasurement = new ProbeTrainMeasurement(endpoint, measurementType, experimentId, context);
+            probeTrainMeasurement.takeAndReportMeasurements(reportItems);
+        }
+
+        // a traceroute needs a probe backend that sees the hops on the way, it is skipped without one
+        if (MeasurementTypes.isTracerouteMeasurementType(measurementType) && context.getTracerouteProbe() != null) {
+            TracerouteMeasurement tracerouteMeasurement = new TracerouteMeasurement(endpoint, measurementType, experimentId, context);
+            tracerouteMeasurement.takeAndReportMeasurements(reportItems);
+        }
+
+        if (MeasurementTypes.isXhrMeasurementType(measurementType)) {
+            XhrMeasurement xhrMeasurement = new XhrMeasurement(endpoint, measurementType, experimentId, objectPath, context);
+            xhrMeasurement.takeAndReportMeasurements(reportItems);
+        }
     }
 }
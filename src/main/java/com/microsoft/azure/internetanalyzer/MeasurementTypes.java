@@ -19,7 +19,33 @@ public class MeasurementTypes {
         return (HTTP & measurementType) == HTTP || (HTTPS & measurementType) == HTTPS;
     }
 
+    public static boolean isRttMeasurementType(int measurementType) {
+        return (RTT & measurementType) == RTT;
+    }
+
+    public static boolean isThroughputMeasurementType(int measurementType) {
+        return (THROUGHPUT_HTTP & measurementType) == THROUGHPUT_HTTP || (THROUGHPUT_HTTPS & measurementType) == THROUGHPUT_HTTPS;
+    }
+
+    public static boolean isDnsMeasurementType(int measurementType) {
+        return (DNS_LOOKUP & measurementType) == DNS_LOOKUP;
+    }
+
+    public static boolean isProbeTrainMeasurementType(int measurementType) {
+        return (JITTER & measurementType) == JITTER || (PACKET_LOSS & measurementType) == PACKET_LOSS;
+    }
+
+    public static boolean isTracerouteMeasurementType(int measurementType) {
+        return (TRACERT4 & measurementType) == TRACERT4 || (TRACERT6 & measurementType) == TRACERT6;
+    }
+
+    public static boolean isXhrMeasurementType(int measurementType) {
+        return (XHRHTTP & measurementType) == XHRHTTP || (XHRHTTPS & measurementType) == XHRHTTPS;
+    }
+
     public static boolean isSupportedMeasurementType(int measurementType) {
-        return isFetchMeasurementType(measurementType);
+        return isFetchMeasurementType(measurementType) || isRttMeasurementType(measurementType) || isThroughputMeasurementType(measurementType)
+                || isDnsMeasurementType(measurementType) || isProbeTrainMeasurementType(measurementType) || isTracerouteMeasurementType(measurementType)
+                || isXhrMeasurementType(measurementType);
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Keeps MessageDigest instances of one algorithm for reuse, since looking them up through the security providers
+ * costs far more than the digest of a certificate. Thread-safe; at most maxIdle digests are kept.
+ */
+class MessageDigestPool {
+    private final String algorithm;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<MessageDigest> idleDigests = new ConcurrentLinkedQueue<MessageDigest>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    MessageDigestPool(String algorithm, int maxIdle) {
+        this.algorithm = algorithm;
+        this.maxIdle = maxIdle;
+    }
+
+    byte[] digest(byte[] input) throws NoSuchAlgorithmException {
+        MessageDigest digest = idleDigests.poll();
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+        } else {
+            idleCount.decrementAndGet();
+        }
+
+        try {
+            return digest.digest(input);
+        } finally {
+            // digest() resets the instance, so it can go straight back
+            if (idleCount.incrementAndGet() <= maxIdle) {
+                idleDigests.offer(digest);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/*
+ * SSLSocketFactory that records when the TCP connection is established and the TLS handshake begins.
+ *
+ * It deliberately does not support unconnected sockets: HttpsURLConnection (and OkHttp on Android) then connect a
+ * plain socket themselves and layer TLS on top of it through createSocket(Socket, ...), which lets us split the
+ * connect() call into its TCP and TLS phases. One instance is shared per delegate because the JDK keep-alive cache
+ * keys connections by their socket factory.
+ */
+class PhaseTimingSSLSocketFactory extends SSLSocketFactory {
+    private static final ThreadLocal<long[]> tlsStartNanos = new ThreadLocal<long[]>();
+    private static volatile PhaseTimingSSLSocketFactory sharedInstance;
+
+    private final SSLSocketFactory delegate;
+
+    private PhaseTimingSSLSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    static PhaseTimingSSLSocketFactory forDelegate(SSLSocketFactory delegate) {
+        if (delegate instanceof PhaseTimingSSLSocketFactory) {
+            return (PhaseTimingSSLSocketFactory) delegate;
+        }
+
+        PhaseTimingSSLSocketFactory instance = sharedInstance;
+        if (instance == null || instance.delegate != delegate) {
+            instance = new PhaseTimingSSLSocketFactory(delegate);
+            sharedInstance = instance;
+        }
+
+        return instance;
+    }
+
+    /*
+     * Starts tracking the TLS handshake on the calling thread.
+     */
+    static void beginTracking() {
+        tlsStartNanos.set(new long[]{-1});
+    }
+
+    /*
+     * Stops tracking and returns the System.nanoTime() at which TLS layering began, or -1 if it never happened
+     * (plain http, or a connection reused from the keep-alive cache).
+     */
+    static long endTracking() {
+        long[] tlsStart = tlsStartNanos.get();
+        tlsStartNanos.remove();
+        return tlsStart == null ? -1 : tlsStart[0];
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        long[] tlsStart = tlsStartNanos.get();
+        if (tlsStart != null) {
+            tlsStart[0] = System.nanoTime();
+        }
+
+        return delegate.createSocket(socket, host, port, autoClose);
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return delegate.createSocket(address, port, localAddress, localPort);
+    }
+}
@@ -0,0 +1,207 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.cert.CertificateEncodingException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.JITTER;
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.PACKET_LOSS;
+
+/*
+ * Sends a paced train of probes to an echo endpoint (host:port, port 7 by default) and reports the interarrival
+ * jitter and packet loss of the echoes. Probes go over UDP; when not a single one comes back the train is repeated
+ * over TCP, where loss only shows as probes still unanswered at the end. Each probe carries its sequence number and
+ * send time, so the echo needs no state and the train allocates nothing once its buffers are set up. The endpoint is
+ * resolved through the context's IDnsResolver.
+ */
+public class ProbeTrainMeasurement implements IMeasurement {
+
+    public static final int defaultProbeCount = 50;
+    public static final int defaultIntervalMillis = 20;
+    public static final int defaultProbeSize = 64;
+    public static final int defaultTimeoutMillis = 1000;
+
+    private static final int echoPort = 7;
+    // sequence number and send time
+    private static final int probeHeaderSize = 12;
+
+    private final String measurementEndpoint;
+    private final int measurementType;
+    private final String experimentId;
+    private final int probeCount;
+    private final int intervalMillis;
+    private final int probeSize;
+    private final int timeoutMillis;
+    private final IDnsResolver resolver;
+
+    public ProbeTrainMeasurement(String measurementEndpoint, int measurementType, String experimentId) {
+        this(measurementEndpoint, measurementType, experimentId, new MeasurementContext());
+    }
+
+    public ProbeTrainMeasurement(String measurementEndpoint, int measurementType, String experimentId, MeasurementContext context) {
+        this(measurementEndpoint, measurementType, experimentId, context, defaultProbeCount, defaultIntervalMillis, defaultProbeSize, defaultTimeoutMillis);
+    }
+
+    public ProbeTrainMeasurement(String measurementEndpoint, int measurementType, String experimentId, MeasurementContext context, int probeCount, int intervalMillis, int probeSize, int timeoutMillis) {
+        if (measurementEndpoint == null || measurementEndpoint.isEmpty() || !MeasurementTypes.isProbeTrainMeasurementType(measurementType)) {
+            throw new IllegalArgumentException("measurementEndpoint is empty or measurementType is invalid");
+        }
+
+        if (probeCount <= 0 || intervalMillis < 0 || probeSize < probeHeaderSize || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("probeCount or timeoutMillis is not positive, or probeSize is below " + probeHeaderSize);
+        }
+
+        this.measurementEndpoint = measurementEndpoint;
+        this.measurementType = measurementType & (JITTER | PACKET_LOSS);
+        this.experimentId = experimentId != null ? experimentId : "";
+        this.probeCount = probeCount;
+        this.intervalMillis = intervalMillis;
+        this.probeSize = probeSize;
+        this.timeoutMillis = timeoutMillis;
+        this.resolver = context.getDnsResolver();
+    }
+
+    @Override
+    public void takeAndReportMeasurements(List<IReportItem> report) throws IOException, CertificateEncodingException {
+        String endpoint = Endpoints.expandWildcardEndpoint(measurementEndpoint);
+        ProbeTrainReportItem reportItem = new ProbeTrainReportItem(endpoint, experimentId, measurementType, probeCount);
+
+        InetAddress[] addresses;
+        try {
+            addresses = resolver.resolve(Endpoints.endpointHost(endpoint));
+        } catch (IOException ex) {
+            addresses = new InetAddress[0];
+        }
+
+        if (addresses.length > 0) {
+            InetSocketAddress address = new InetSocketAddress(addresses[0], Endpoints.endpointPort(endpoint, echoPort));
+            ByteBuffer sendBuffer = ByteBuffer.allocateDirect(probeSize);
+            ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(Math.max(probeSize * 16, 2048));
+            try (DatagramChannel channel = DatagramChannel.open()) {
+                channel.connect(address);
+                sendTrain(channel, false, "udp", sendBuffer, receiveBuffer, reportItem);
+            } catch (IOException ex) {
+                // blocked or refused, TCP is tried next
+            }
+
+            if (reportItem.getReceived() == 0) {
+                try (SocketChannel channel = SocketChannel.open()) {
+                    channel.socket().connect(address, timeoutMillis);
+                    channel.socket().setTcpNoDelay(true);
+                    sendTrain(channel, true, "tcp", sendBuffer, receiveBuffer, reportItem);
+                } catch (IOException ex) {
+                    // reported with what was received, if anything
+                }
+            }
+        }
+
+        report.add(reportItem);
+    }
+
+    private <C extends SelectableChannel & ByteChannel> void sendTrain(C channel, boolean stream, String transport, ByteBuffer sendBuffer, ByteBuffer receiveBuffer, ProbeTrainReportItem reportItem) throws IOException {
+        reportItem.reset(transport);
+        receiveBuffer.clear();
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long nextSend = System.nanoTime();
+            int sent = 0;
+            boolean writing = false;
+            long deadline = Long.MAX_VALUE;
+            while (reportItem.getReceived() < probeCount) {
+                long now = System.nanoTime();
+                if (!writing && sent < probeCount && now >= nextSend) {
+                    sendBuffer.clear();
+                    sendBuffer.putInt(sent).putLong(now);
+                    while (sendBuffer.hasRemaining()) {
+                        sendBuffer.put((byte) 0);
+                    }
+                    sendBuffer.flip();
+                    // a full socket buffer drops a datagram probe, like a congested link would; the rest of a stream
+                    // probe is written once the channel is writable again, unless that takes longer than the timeout
+                    channel.write(sendBuffer);
+                    reportItem.setSent(++sent);
+                    nextSend += intervalNanos;
+                    if (stream && sendBuffer.hasRemaining()) {
+                        writing = true;
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        deadline = now + timeoutNanos;
+                    } else if (sent == probeCount) {
+                        deadline = now + timeoutNanos;
+                    }
+                    continue;
+                }
+
+                long wakeUp = sent < probeCount && !writing ? nextSend : deadline;
+                if (now >= wakeUp) {
+                    break;
+                }
+
+                selector.selectedKeys().clear();
+                if (selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeUp - now))) == 0) {
+                    continue;
+                }
+
+                if (key.isReadable() && !receive(channel, stream, receiveBuffer, reportItem)) {
+                    break;
+                }
+
+                if (writing && key.isWritable()) {
+                    channel.write(sendBuffer);
+                    if (!sendBuffer.hasRemaining()) {
+                        writing = false;
+                        key.interestOps(SelectionKey.OP_READ);
+                        if (sent < probeCount) {
+                            deadline = Long.MAX_VALUE;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Reads the echoes available without blocking; false when the peer closed the connection.
+     */
+    private boolean receive(ByteChannel channel, boolean stream, ByteBuffer receiveBuffer, ProbeTrainReportItem reportItem) throws IOException {
+        int read;
+        while ((read = channel.read(receiveBuffer)) > 0) {
+            long now = System.nanoTime();
+            receiveBuffer.flip();
+            while (receiveBuffer.remaining() >= probeSize) {
+                int start = receiveBuffer.position();
+                reportItem.addReply(receiveBuffer.getInt(start), now - receiveBuffer.getLong(start + 4));
+                receiveBuffer.position(start + probeSize);
+            }
+
+            // a datagram is one probe, anything left of it is not; a stream keeps the start of the next probe
+            if (stream) {
+                receiveBuffer.compact();
+            } else {
+                receiveBuffer.clear();
+            }
+        }
+
+        return read >= 0;
+    }
+}
@@ -0,0 +1,129 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/*
+ * Outcome of one ProbeTrainMeasurement. Result is the average round trip in whole milliseconds, or -1 when no probe
+ * came back. Jitter is the RFC 3550 interarrival jitter of the round trips in milliseconds with microsecond precision,
+ * Loss the percentage of probes that never came back and Transport "udp" or "tcp".
+ */
+public class ProbeTrainReportItem implements IReportItem {
+    private final String requestId;
+    private final String experimentId;
+    private final int measurementType;
+    private final int probeCount;
+    // one bit per sequence number, so duplicated replies are only counted once
+    private final long[] receivedProbes;
+
+    private String transport = "";
+    private int sent;
+    private int received;
+    private long totalRttNanos;
+    private long lastTransitNanos = -1;
+    private double jitterNanos;
+
+    public ProbeTrainReportItem(String requestId, String experimentId, int measurementType, int probeCount) {
+        this.requestId = requestId;
+        this.experimentId = experimentId;
+        this.measurementType = measurementType;
+        this.probeCount = probeCount;
+        this.receivedProbes = new long[(probeCount + 63) / 64];
+    }
+
+    /*
+     * Starts over for a train sent over the given transport.
+     */
+    public void reset(String transport) {
+        this.transport = transport;
+        sent = 0;
+        received = 0;
+        totalRttNanos = 0;
+        lastTransitNanos = -1;
+        jitterNanos = 0;
+        Arrays.fill(receivedProbes, 0);
+    }
+
+    public void setSent(int sent) {
+        this.sent = sent;
+    }
+
+    /*
+     * Adds the reply to probe sequence in arrival order. With the send timestamp echoed back, the round trip is the
+     * transit time of RFC 3550 section 6.4.1: J += (|D| - J) / 16, D the difference to the previous transit.
+     */
+    public void addReply(int sequence, long rttNanos) {
+        if (sequence < 0 || sequence >= probeCount || rttNanos < 0) {
+            return;
+        }
+
+        long bit = 1L << (sequence & 63);
+        if ((receivedProbes[sequence >>> 6] & bit) != 0) {
+            return;
+        }
+
+        receivedProbes[sequence >>> 6] |= bit;
+        received++;
+        totalRttNanos += rttNanos;
+        if (lastTransitNanos >= 0) {
+            jitterNanos += (Math.abs(rttNanos - lastTransitNanos) - jitterNanos) / 16;
+        }
+        lastTransitNanos = rttNanos;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public int getSent() {
+        return sent;
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public long getJitterNanos() {
+        return Math.round(jitterNanos);
+    }
+
+    public double getLossPercent() {
+        return sent > 0 ? Math.round((sent - received) * 100000.0 / sent) / 1000.0 : 0;
+    }
+
+    public JSONObject getFormattedReportItem() throws JSONException {
+        JSONObject resultJSONObj = new JSONObject();
+        if (!requestId.isEmpty()) {
+            resultJSONObj.put("RequestID", requestId);
+        }
+
+        if (!experimentId.isEmpty()) {
+            resultJSONObj.put("Ex", experimentId);
+        }
+
+        resultJSONObj.put("Result", getResult());
+        resultJSONObj.put("T", measurementType);
+        if (sent > 0) {
+            resultJSONObj.put("Transport", transport);
+            resultJSONObj.put("Sent", sent);
+            resultJSONObj.put("Received", received);
+            resultJSONObj.put("Loss", getLossPercent());
+            resultJSONObj.put("Jitter", FetchPhaseTimings.toMillis(getJitterNanos()));
+        }
+
+        return resultJSONObj;
+    }
+
+    private long getResult() {
+        return received > 0 ? totalRttNanos / received / 1000000 : -1;
+    }
+}
@@ -0,0 +1,275 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONArray;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Collects report items of many measurement runs and uploads them as one report per monitor id, tag and set of
+ * upload endpoints. A batch is uploaded once it holds maxBatchItems items or maxDelayMillis after its first item
+ * arrived, whichever comes first. Batches are POSTed: a GET query string has room for only a handful of items, too few
+ * for batching to save collector requests, so the GET upload mode is not accepted.
+ *
+ * At most capacity items are held, counting both queued items and items of uploads still in flight. offer blocks
+ * while the batcher is full, so producers slow down to the pace of the collector instead of piling up reports.
+ */
+public class ReportBatcher implements Closeable {
+    private static final int defaultMaxBatchItems = 500;
+    private static final long defaultMaxDelayMillis = TimeUnit.SECONDS.toMillis(30);
+    private static final int defaultCapacity = 5000;
+
+    private final IHttpTransport httpTransport;
+    private final String reportUploadPrefix;
+    private final ReportUploadMode reportUploadMode;
+    private final int maxBatchItems;
+    private final long maxDelayMillis;
+    private final int capacity;
+    private final ReportJournal reportJournal;
+    private final ScheduledThreadPoolExecutor uploadExecutor;
+
+    private final Object lock = new Object();
+    private final Map<BatchKey, Batch> batches = new LinkedHashMap<BatchKey, Batch>();
+    private int pendingItems;
+    private boolean closed;
+
+    private final AtomicLong uploadedReports = new AtomicLong();
+    private final AtomicLong failedReports = new AtomicLong();
+
+    public ReportBatcher(IHttpTransport httpTransport, String reportUploadPrefix) {
+        this(httpTransport, reportUploadPrefix, ReportUploadMode.POST_GZIP);
+    }
+
+    public ReportBatcher(IHttpTransport httpTransport, String reportUploadPrefix, ReportUploadMode reportUploadMode) {
+        this(httpTransport, reportUploadPrefix, reportUploadMode, defaultMaxBatchItems, defaultMaxDelayMillis, defaultCapacity);
+    }
+
+    public ReportBatcher(IHttpTransport httpTransport, String reportUploadPrefix, ReportUploadMode reportUploadMode, int maxBatchItems, long maxDelayMillis, int capacity) {
+        this(httpTransport, reportUploadPrefix, reportUploadMode, maxBatchItems, maxDelayMillis, capacity, null);
+    }
+
+    /*
+     * Batches that no upload endpoint accepted are appended to reportJournal, when one is given.
+     */
+    public ReportBatcher(IHttpTransport httpTransport, String reportUploadPrefix, ReportUploadMode reportUploadMode, int maxBatchItems, long maxDelayMillis, int capacity, ReportJournal reportJournal) {
+        if (httpTransport == null || reportUploadPrefix == null || reportUploadPrefix.isEmpty() || reportUploadMode == null) {
+            throw new IllegalArgumentException("httpTransport, reportUploadPrefix and reportUploadMode are required.");
+        }
+
+        if (reportUploadMode == ReportUploadMode.GET) {
+            throw new IllegalArgumentException("Batched reports need a POST reportUploadMode.");
+        }
+
+        if (maxBatchItems < 1 || maxDelayMillis < 0 || capacity < maxBatchItems) {
+            throw new IllegalArgumentException("maxBatchItems must be positive, maxDelayMillis not negative and capacity at least maxBatchItems.");
+        }
+
+        this.httpTransport = httpTransport;
+        this.reportUploadPrefix = reportUploadPrefix;
+        this.reportUploadMode = reportUploadMode;
+        this.maxBatchItems = maxBatchItems;
+        this.maxDelayMillis = maxDelayMillis;
+        this.capacity = capacity;
+        this.reportJournal = reportJournal;
+        this.uploadExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "internet-analyzer-report-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // close() uploads the queued batches itself, their delayed uploads are dropped on shutdown
+        this.uploadExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /*
+     * Queues the report items, waiting while the batcher is full.
+     */
+    public void offer(String monitorId, String tag, JSONArray uploadEndpoints, List<IReportItem> reportItems) throws InterruptedException {
+        offer(monitorId, tag, uploadEndpoints, reportItems, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Queues the report items, waiting up to timeout while the batcher is full. Returns false if the items could not
+     * be queued in time. A single offer larger than capacity is only accepted once nothing else is pending.
+     */
+    public boolean offer(String monitorId, String tag, JSONArray uploadEndpoints, List<IReportItem> reportItems, long timeout, TimeUnit unit) throws InterruptedException {
+        if (monitorId == null || monitorId.isEmpty() || uploadEndpoints == null) {
+            throw new IllegalArgumentException("MonitorId and/or uploadEndpoints is empty.");
+        }
+
+        if (reportItems.isEmpty()) {
+            return true;
+        }
+
+        BatchKey key = new BatchKey(monitorId, tag, uploadEndpoints);
+        Batch fullBatch = null;
+        synchronized (lock) {
+            long remainingNanos = unit.toNanos(timeout);
+            long deadline = System.nanoTime() + remainingNanos;
+            while (!closed && pendingItems > 0 && pendingItems + reportItems.size() > capacity) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+                remainingNanos = deadline - System.nanoTime();
+            }
+
+            if (closed) {
+                throw new IllegalStateException("ReportBatcher is closed.");
+            }
+
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(key);
+                batches.put(key, batch);
+                scheduleDelayedUpload(batch);
+            }
+
+            pendingItems += reportItems.size();
+            batch.reportItems.addAll(reportItems);
+            if (batch.reportItems.size() >= maxBatchItems) {
+                batches.remove(key);
+                fullBatch = batch;
+            }
+        }
+
+        if (fullBatch != null) {
+            final Batch uploadBatch = fullBatch;
+            uploadExecutor.execute(() -> upload(uploadBatch));
+        }
+
+        return true;
+    }
+
+    /*
+     * Uploads every queued batch on the calling thread.
+     */
+    public void flush() {
+        List<Batch> queuedBatches;
+        synchronized (lock) {
+            queuedBatches = new ArrayList<Batch>(batches.values());
+            batches.clear();
+        }
+
+        for (Batch batch : queuedBatches) {
+            upload(batch);
+        }
+    }
+
+    /*
+     * Stops accepting items, uploads what is queued and waits for uploads in flight.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+
+        flush();
+        uploadExecutor.shutdown();
+        try {
+            uploadExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPendingItemCount() {
+        synchronized (lock) {
+            return pendingItems;
+        }
+    }
+
+    public long getUploadedReportCount() {
+        return uploadedReports.get();
+    }
+
+    public long getFailedReportCount() {
+        return failedReports.get();
+    }
+
+    IHttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    private void scheduleDelayedUpload(final Batch batch) {
+        uploadExecutor.schedule(() -> {
+            synchronized (lock) {
+                if (batches.get(batch.key) != batch) {
+                    return;
+                }
+                batches.remove(batch.key);
+            }
+            upload(batch);
+        }, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void upload(Batch batch) {
+        try {
+            InternetAnalyzerClient.uploadReport(batch.reportItems, batch.key.monitorId, batch.key.tag,
+                    new JSONArray(batch.key.uploadEndpoints), reportUploadPrefix, httpTransport, reportUploadMode, reportJournal);
+            uploadedReports.incrementAndGet();
+        } catch (IOException | RuntimeException ex) {
+            failedReports.incrementAndGet();
+        } finally {
+            synchronized (lock) {
+                pendingItems -= batch.reportItems.size();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static class Batch {
+        private final BatchKey key;
+        private final List<IReportItem> reportItems = new ArrayList<IReportItem>();
+
+        Batch(BatchKey key) {
+            this.key = key;
+        }
+    }
+
+    private static class BatchKey {
+        private final String monitorId;
+        private final String tag;
+        private final List<String> uploadEndpoints;
+
+        BatchKey(String monitorId, String tag, JSONArray uploadEndpoints) {
+            this.monitorId = monitorId;
+            this.tag = tag == null ? "" : tag;
+            this.uploadEndpoints = new ArrayList<String>(uploadEndpoints.length());
+            for (int i = 0; i < uploadEndpoints.length(); i++) {
+                this.uploadEndpoints.add(uploadEndpoints.optString(i));
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof BatchKey)) {
+                return false;
+            }
+
+            BatchKey key = (BatchKey) other;
+            return monitorId.equals(key.monitorId) && tag.equals(key.tag) && uploadEndpoints.equals(key.uploadEndpoints);
+        }
+
+        @Override
+        public int hashCode() {
+            return (monitorId.hashCode() * 31 + tag.hashCode()) * 31 + uploadEndpoints.hashCode();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/*
+ * Bounded, memory-mapped circular log of reports that could not be uploaded. Records are appended at the tail and
+ * read from the head, oldest first; when the log is full the oldest records are evicted to make room.
+ *
+ * File layout: a 32 byte header (magic, version, data capacity, record count, head and tail offsets) followed by
+ * the data region. Each record is framed as magic, payload length, CRC32 of the payload and the payload. A record
+ * never wraps; when it does not fit before the end of the data region a wrap marker is left and it is written at
+ * the start. Evicted records are dropped from the header before the new record overwrites them, the header only
+ * takes the new record once it is fully written, and opening a journal drops every record from the first one that
+ * fails its framing or checksum, so a crash loses at most the evicted records and the record being written.
+ */
+public class ReportJournal implements Closeable {
+    private static final int journalMagic = 0x49414a31;
+    private static final int journalVersion = 1;
+    private static final int recordMagic = 0x52455054;
+    private static final int wrapMagic = 0x57524150;
+    private static final int headerSize = 32;
+    private static final int recordHeaderSize = 12;
+
+    private static final int capacityOffset = 8;
+    private static final int countOffset = 12;
+    private static final int headOffset = 16;
+    private static final int tailOffset = 24;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int count;
+    private int head;
+    private int tail;
+
+    /*
+     * Opens the journal at path, creating it with capacityBytes of record space if it does not exist yet. An
+     * existing journal keeps the capacity it was created with.
+     */
+    public ReportJournal(File path, int capacityBytes) throws IOException {
+        if (capacityBytes < recordHeaderSize + 1) {
+            throw new IllegalArgumentException("capacityBytes is too small.");
+        }
+
+        this.file = new RandomAccessFile(path, "rw");
+        try {
+            this.channel = file.getChannel();
+            int existingCapacity = readExistingCapacity();
+            this.capacity = existingCapacity > 0 ? existingCapacity : capacityBytes;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize + (long) capacity);
+            if (existingCapacity > 0) {
+                recover();
+            } else {
+                buffer.putInt(0, journalMagic);
+                buffer.putInt(4, journalVersion);
+                buffer.putInt(capacityOffset, capacity);
+                writeHeader(0, 0, 0);
+            }
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /*
+     * Appends a record, evicting the oldest records while there is not enough room. Returns false when the record
+     * is larger than the whole journal.
+     */
+    public synchronized boolean append(byte[] record) {
+        int recordSize = recordHeaderSize + record.length;
+        if (recordSize > capacity) {
+            return false;
+        }
+
+        int newHead = head;
+        int newTail = tail;
+        int newCount = count;
+        while (true) {
+            if (newCount == 0) {
+                newHead = 0;
+                newTail = 0;
+            }
+
+            if (newCount == 0 || newTail > newHead) {
+                if (capacity - newTail >= recordSize) {
+                    break;
+                }
+
+                // no room before the end of the data region, continue at the start
+                if (capacity - newTail >= 4) {
+                    buffer.putInt(headerSize + newTail, wrapMagic);
+                }
+                newTail = 0;
+                continue;
+            }
+
+            if (newHead - newTail >= recordSize) {
+                break;
+            }
+
+            // the oldest record sits right where the new one has to go
+            newHead = normalize(newHead + recordHeaderSize + buffer.getInt(headerSize + newHead + 4));
+            newCount--;
+        }
+
+        if (newCount != count) {
+            // move the head past the evicted records before the new record overwrites them
+            writeHeader(newCount, newCount == 0 ? 0 : newHead, newCount == 0 ? 0 : tail);
+        }
+
+        int position = headerSize + newTail;
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        buffer.putInt(position, recordMagic);
+        buffer.putInt(position + 4, record.length);
+        buffer.putInt(position + 8, (int) crc.getValue());
+        for (int i = 0; i < record.length; i++) {
+            buffer.put(position + recordHeaderSize + i, record[i]);
+        }
+        buffer.force();
+
+        writeHeader(newCount + 1, newHead, newTail + recordSize);
+        return true;
+    }
+
+    /*
+     * Returns the oldest record, or null when the journal is empty.
+     */
+    public synchronized byte[] peekOldest() {
+        if (count == 0) {
+            return null;
+        }
+
+        int length = buffer.getInt(headerSize + head + 4);
+        byte[] record = new byte[length];
+        for (int i = 0; i < length; i++) {
+            record[i] = buffer.get(headerSize + head + recordHeaderSize + i);
+        }
+        return record;
+    }
+
+    public synchronized void removeOldest() {
+        if (count == 0) {
+            return;
+        }
+
+        int newHead = normalize(head + recordHeaderSize + buffer.getInt(headerSize + head + 4));
+        writeHeader(count - 1, count == 1 ? 0 : newHead, count == 1 ? 0 : tail);
+    }
+
+    public synchronized int getRecordCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private int readExistingCapacity() throws IOException {
+        if (channel.size() < headerSize) {
+            return 0;
+        }
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize);
+        int existingCapacity = header.getInt(capacityOffset);
+        boolean valid = header.getInt(0) == journalMagic && header.getInt(4) == journalVersion
+                && existingCapacity > recordHeaderSize && channel.size() >= headerSize + (long) existingCapacity;
+        return valid ? existingCapacity : 0;
+    }
+
+    /*
+     * Walks the records from the head and keeps the ones up to the first that is cut short or fails its checksum.
+     */
+    private void recover() {
+        int storedCount = buffer.getInt(countOffset);
+        long storedHead = buffer.getLong(headOffset);
+        if (storedCount <= 0 || storedHead < 0 || storedHead >= capacity) {
+            writeHeader(0, 0, 0);
+            return;
+        }
+
+        int validHead = normalize((int) storedHead);
+        int position = validHead;
+        int validCount = 0;
+        while (validCount < storedCount) {
+            int length = readValidRecordLength(position);
+            if (length < 0) {
+                break;
+            }
+
+            validCount++;
+            position += recordHeaderSize + length;
+            if (validCount < storedCount) {
+                position = normalize(position);
+            }
+        }
+
+        writeHeader(validCount, validCount == 0 ? 0 : validHead, validCount == 0 ? 0 : position);
+    }
+
+    private int readValidRecordLength(int position) {
+        if (capacity - position < recordHeaderSize || buffer.getInt(headerSize + position) != recordMagic) {
+            return -1;
+        }
+
+        int length = buffer.getInt(headerSize + position + 4);
+        if (length < 0 || length > capacity - position - recordHeaderSize) {
+            return -1;
+        }
+
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < length; i++) {
+            crc.update(buffer.get(headerSize + position + recordHeaderSize + i));
+        }
+        return (int) crc.getValue() == buffer.getInt(headerSize + position + 8) ? length : -1;
+    }
+
+    /*
+     * Moves a read position that points at a wrap marker or at space too small for a record to the start.
+     */
+    private int normalize(int position) {
+        if (capacity - position < recordHeaderSize || buffer.getInt(headerSize + position) == wrapMagic) {
+            return 0;
+        }
+        return position;
+    }
+
+    private void writeHeader(int newCount, int newHead, int newTail) {
+        buffer.putInt(countOffset, newCount);
+        buffer.putLong(headOffset, newHead);
+        buffer.putLong(tailOffset, newTail);
+        buffer.force();
+        count = newCount;
+        head = newHead;
+        tail = newTail;
+    }
+}
@@ -0,0 +1,29 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+/*
+ * How reports are sent to the upload endpoints. GET carries the whole report url encoded in the query string.
+ * The POST modes keep the report metadata in the query string and send the DATA array as a compressed JSON body;
+ * collectors answering 405, 411, 415 or 501 to the POST get the report as a GET instead.
+ */
+public enum ReportUploadMode {
+    GET(null),
+    POST_GZIP("gzip"),
+    POST_DEFLATE("deflate");
+
+    private final String contentEncoding;
+
+    ReportUploadMode(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+}
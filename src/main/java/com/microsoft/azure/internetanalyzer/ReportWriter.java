@@ -0,0 +1,350 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Streams report JSON straight into a reusable byte buffer. JSON escaping follows org.json's JSONObject.quote and,
+ * for url encoded writers, percent-encoding follows URLEncoder with UTF-8 in the same pass, so no intermediate
+ * JSONObject, JSON string or encoded copy is built.
+ *
+ * Writers are not thread-safe; reset() makes a writer ready for the next report while keeping its buffer.
+ */
+public final class ReportWriter {
+    private static final byte[] hexDigits = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final int maxDepth = 32;
+
+    private final boolean urlEncoded;
+    private byte[] buffer;
+    private int size;
+    private int depth;
+    // bit i is set once the container at depth i got its first element and the next one needs a comma
+    private long hasElements;
+
+    public ReportWriter(boolean urlEncoded) {
+        this(urlEncoded, 1024);
+    }
+
+    public ReportWriter(boolean urlEncoded, int initialCapacity) {
+        this.urlEncoded = urlEncoded;
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public boolean isUrlEncoded() {
+        return urlEncoded;
+    }
+
+    public void reset() {
+        size = 0;
+        depth = 0;
+        hasElements = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, urlEncoded ? StandardCharsets.US_ASCII : StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Appends ascii text as is, for example query string separators.
+     */
+    public ReportWriter appendRaw(String ascii) {
+        ensureCapacity(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[size++] = (byte) ascii.charAt(i);
+        }
+
+        return this;
+    }
+
+    /*
+     * Appends text that is not JSON, percent-encoded when the writer is url encoded.
+     */
+    public ReportWriter appendText(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            i = writeChar(value, i);
+        }
+
+        return this;
+    }
+
+    public ReportWriter beginArray() {
+        beginValue();
+        return open('[');
+    }
+
+    public ReportWriter endArray() {
+        return close(']');
+    }
+
+    public ReportWriter beginObject() {
+        beginValue();
+        return open('{');
+    }
+
+    public ReportWriter endObject() {
+        return close('}');
+    }
+
+    public ReportWriter name(String name) {
+        beginValue();
+        writeQuoted(name);
+        writeChar(':');
+        // the value that follows belongs to this name and needs no comma
+        hasElements &= ~(1L << depth);
+        return this;
+    }
+
+    public ReportWriter value(String value) {
+        beginValue();
+        if (value == null) {
+            appendRaw("null");
+        } else {
+            writeQuoted(value);
+        }
+
+        return this;
+    }
+
+    public ReportWriter value(long value) {
+        beginValue();
+        return appendRaw(Long.toString(value));
+    }
+
+    public ReportWriter value(boolean value) {
+        beginValue();
+        return appendRaw(value ? "true" : "false");
+    }
+
+    /*
+     * Writes the number the way JSONObject.numberToString does, trailing fraction zeros are dropped.
+     */
+    public ReportWriter value(double value) throws JSONException {
+        if (Double.isInfinite(value) || Double.isNaN(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+
+        String number = Double.toString(value);
+        if (number.indexOf('.') > 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            int end = number.length();
+            while (number.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (number.charAt(end - 1) == '.') {
+                end--;
+            }
+            number = number.substring(0, end);
+        }
+
+        beginValue();
+        return appendText(number);
+    }
+
+    /*
+     * Writes an already built JSONObject, used by report items without a streaming representation.
+     */
+    public ReportWriter value(JSONObject value) {
+        beginValue();
+        return appendText(value.toString());
+    }
+
+    public ReportWriter field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    public ReportWriter field(String name, long value) {
+        return name(name).value(value);
+    }
+
+    public ReportWriter field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    public ReportWriter field(String name, double value) throws JSONException {
+        return name(name).value(value);
+    }
+
+    private ReportWriter open(char c) {
+        if (depth + 1 >= maxDepth) {
+            throw new IllegalStateException("Report nesting is too deep.");
+        }
+
+        writeChar(c);
+        depth++;
+        hasElements &= ~(1L << depth);
+        return this;
+    }
+
+    private ReportWriter close(char c) {
+        if (depth == 0) {
+            throw new IllegalStateException("No open array or object to close.");
+        }
+
+        depth--;
+        writeChar(c);
+        return this;
+    }
+
+    private void beginValue() {
+        long bit = 1L << depth;
+        if (depth > 0 && (hasElements & bit) != 0) {
+            writeChar(',');
+        }
+
+        hasElements |= bit;
+    }
+
+    /*
+     * Same escaping as JSONObject.quote: quotes, backslashes and "</" are escaped, control characters and the
+     * 0x80-0x9f and 0x2000-0x20ff ranges are written as \\u escapes.
+     */
+    private void writeQuoted(String value) {
+        writeChar('"');
+        char previous = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    writeChar('\\');
+                    writeChar(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        writeChar('\\');
+                    }
+                    writeChar(c);
+                    break;
+                case '\b':
+                    writeChar('\\');
+                    writeChar('b');
+                    break;
+                case '\t':
+                    writeChar('\\');
+                    writeChar('t');
+                    break;
+                case '\n':
+                    writeChar('\\');
+                    writeChar('n');
+                    break;
+                case '\f':
+                    writeChar('\\');
+                    writeChar('f');
+                    break;
+                case '\r':
+                    writeChar('\\');
+                    writeChar('r');
+                    break;
+                default:
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        writeChar('\\');
+                        writeChar('u');
+                        String hex = Integer.toHexString(c);
+                        for (int pad = hex.length(); pad < 4; pad++) {
+                            writeChar('0');
+                        }
+                        for (int h = 0; h < hex.length(); h++) {
+                            writeChar(hex.charAt(h));
+                        }
+                    } else {
+                        i = writeChar(value, i);
+                    }
+            }
+            previous = c;
+        }
+        writeChar('"');
+    }
+
+    /*
+     * Writes the character at index, or the surrogate pair starting there, and returns the index of the last
+     * character consumed.
+     */
+    private int writeChar(String value, int index) {
+        char c = value.charAt(index);
+        if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            writeCodePoint(Character.toCodePoint(c, value.charAt(index + 1)));
+            return index + 1;
+        }
+
+        // unpaired surrogates can't be encoded in UTF-8 and are replaced, same as String.getBytes does
+        writeCodePoint(Character.isSurrogate(c) ? '?' : c);
+        return index;
+    }
+
+    private void writeChar(char c) {
+        writeCodePoint(c);
+    }
+
+    private void writeCodePoint(int codePoint) {
+        ensureCapacity(12);
+        if (codePoint < 0x80) {
+            writeByte(codePoint);
+        } else if (codePoint < 0x800) {
+            writeByte(0xc0 | (codePoint >> 6));
+            writeByte(0x80 | (codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            writeByte(0xe0 | (codePoint >> 12));
+            writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+            writeByte(0x80 | (codePoint & 0x3f));
+        } else {
+            writeByte(0xf0 | (codePoint >> 18));
+            writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+            writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+            writeByte(0x80 | (codePoint & 0x3f));
+        }
+    }
+
+    /*
+     * Writes one UTF-8 byte, percent-encoded the way URLEncoder does for url encoded writers.
+     */
+    private void writeByte(int b) {
+        if (!urlEncoded || isUnreserved(b)) {
+            buffer[size++] = (byte) b;
+        } else if (b == ' ') {
+            buffer[size++] = '+';
+        } else {
+            buffer[size++] = '%';
+            buffer[size++] = hexDigits[(b >> 4) & 0xf];
+            buffer[size++] = hexDigits[b & 0xf];
+        }
+    }
+
+    private static boolean isUnreserved(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '.' || b == '-' || b == '*' || b == '_';
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.security.cert.CertificateEncodingException;
+import java.util.List;
+
+/*
+ * Measures round trip times with HEAD requests over one pinned connection. A first HEAD opens the connection
+ * (DNS, TCP and TLS) and is not counted; every following probe is a single request/response exchange on the warm
+ * connection, so a sample costs one round trip and a few hundred bytes instead of a full fetch. Probes that had to
+ * reconnect are not counted either.
+ */
+public class RttMeasurement implements IMeasurement {
+
+    public static final int defaultProbeCount = 10;
+
+    private static final String defaultObjectPath = "/apc/trans.gif";
+
+    private final String measurementEndpoint;
+    private final String experimentId;
+    private final String objectPath;
+    private final boolean secure;
+    private final int probeCount;
+    private final IHttpTransport transport;
+
+    public RttMeasurement(String measurementEndpoint, String experimentId, String objectPath) {
+        this(measurementEndpoint, experimentId, objectPath, new MeasurementContext());
+    }
+
+    public RttMeasurement(String measurementEndpoint, String experimentId, String objectPath, MeasurementContext context) {
+        this(measurementEndpoint, experimentId, objectPath, context, true, defaultProbeCount);
+    }
+
+    public RttMeasurement(String measurementEndpoint, String experimentId, String objectPath, MeasurementContext context, boolean secure, int probeCount) {
+        if (measurementEndpoint == null || measurementEndpoint.isEmpty() || probeCount <= 0) {
+            throw new IllegalArgumentException("measurementEndpoint is empty or probeCount is not positive");
+        }
+
+        this.measurementEndpoint = measurementEndpoint;
+        this.experimentId = experimentId != null ? experimentId : "";
+        this.objectPath = Endpoints.normalizeObjectPath(objectPath, defaultObjectPath);
+        this.secure = secure;
+        this.probeCount = probeCount;
+        this.transport = context.getHttpTransport();
+    }
+
+    @Override
+    public void takeAndReportMeasurements(List<IReportItem> report) throws IOException, CertificateEncodingException {
+        // one random host for all probes, the connection has to be opened to a single name
+        String host = Endpoints.expandWildcardEndpoint(measurementEndpoint);
+
+        URL probeUrl = new URL((secure ? "https" : "http") + "://" + host + objectPath);
+        RttReportItem reportItem = new RttReportItem(host, Endpoints.objectName(objectPath), experimentId);
+        IHttpConnection connection = transport.openConnection(probeUrl);
+        try {
+            // opens the connection; its time includes the handshakes and is not a round trip sample
+            if (probe(connection, probeUrl) >= 0) {
+                for (int i = 0; i < probeCount; i++) {
+                    long start = System.nanoTime();
+                    int reused = probe(connection, probeUrl);
+                    if (reused < 0) {
+                        break;
+                    }
+
+                    if (reused > 0) {
+                        reportItem.addSample(System.nanoTime() - start);
+                    }
+                }
+            }
+        } finally {
+            connection.close();
+        }
+
+        report.add(reportItem);
+    }
+
+    /*
+     * Sends one HEAD request, returning 1 if it went over the already open connection, 0 if the connection had to be
+     * (re)opened and -1 on an error.
+     */
+    private static int probe(IHttpConnection connection, URL probeUrl) {
+        HttpRequest request = new HttpRequest("HEAD", probeUrl);
+        request.setFollowRedirects(false);
+        try {
+            IHttpResponse response = connection.send(request);
+            if (FetchMeasurement.drainStream(response.getBody()) < 0) {
+                response.disconnect();
+                return -1;
+            }
+
+            boolean reused = response.isConnectionReused();
+            response.close();
+            return reused ? 1 : 0;
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Round trip times of the probes of one RttMeasurement. Result is the average in whole milliseconds, or -1 when no
+ * probe succeeded; Min, Avg, Max and the population standard deviation Sd are in milliseconds with microsecond
+ * precision.
+ */
+public class RttReportItem implements IReportItem {
+    private final String requestId;
+    private final String measurementObject;
+    private final String experimentId;
+
+    private int samples;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos = -1;
+    private double mean;
+    private double sumOfSquares;
+
+    public RttReportItem(String requestId, String measurementObject, String experimentId) {
+        this.requestId = requestId;
+        this.measurementObject = measurementObject;
+        this.experimentId = experimentId;
+    }
+
+    /*
+     * Adds one probe, Welford's running mean and variance so the samples themselves are not kept.
+     */
+    public void addSample(long rttNanos) {
+        if (rttNanos < 0) {
+            throw new IllegalArgumentException("rttNanos cannot be negative");
+        }
+
+        samples++;
+        minNanos = Math.min(minNanos, rttNanos);
+        maxNanos = Math.max(maxNanos, rttNanos);
+        double delta = rttNanos - mean;
+        mean += delta / samples;
+        sumOfSquares += delta * (rttNanos - mean);
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public long getMinNanos() {
+        return samples > 0 ? minNanos : -1;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getAverageNanos() {
+        return samples > 0 ? Math.round(mean) : -1;
+    }
+
+    public long getStandardDeviationNanos() {
+        return samples > 0 ? Math.round(Math.sqrt(sumOfSquares / samples)) : -1;
+    }
+
+    public JSONObject getFormattedReportItem() throws JSONException {
+        JSONObject resultJSONObj = new JSONObject();
+        if (!requestId.isEmpty()) {
+            resultJSONObj.put("RequestID", requestId);
+        }
+
+        if (!measurementObject.isEmpty()) {
+            resultJSONObj.put("Object", measurementObject);
+        }
+
+        if (!experimentId.isEmpty()) {
+            resultJSONObj.put("Ex", experimentId);
+        }
+
+        resultJSONObj.put("Result", getResult());
+        resultJSONObj.put("T", MeasurementTypes.RTT);
+        resultJSONObj.put("Samples", samples);
+        if (samples > 0) {
+            resultJSONObj.put("Min", FetchPhaseTimings.toMillis(getMinNanos()));
+            resultJSONObj.put("Avg", FetchPhaseTimings.toMillis(getAverageNanos()));
+            resultJSONObj.put("Max", FetchPhaseTimings.toMillis(getMaxNanos()));
+            resultJSONObj.put("Sd", FetchPhaseTimings.toMillis(getStandardDeviationNanos()));
+        }
+
+        return resultJSONObj;
+    }
+
+    private long getResult() {
+        return samples > 0 ? Math.round(mean / 1e6) : -1;
+    }
+}
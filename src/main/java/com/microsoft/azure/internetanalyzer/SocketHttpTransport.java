@@ -0,0 +1,623 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/*
+ * Minimal HTTP/1.1 transport over plain sockets, used for measurements because it gives explicit control over the
+ * connection: every phase (DNS, TCP, TLS) is timed on its own and a connection handle keeps its socket and TLS
+ * session open between requests, so a warm fetch is known to reuse the cold fetch's connection.
+ *
+ * Connections are made directly to the origin; proxy settings are not applied, so this transport is opt-in through
+ * MeasurementContext or InternetAnalyzerClient.Builder.measurementHttpTransport. Redirects are returned to the caller
+ * rather than followed, since the target may need a connection to another origin; FetchMeasurement follows them.
+ */
+public class SocketHttpTransport implements IHttpTransport {
+    private static final int httpDefaultPort = 80;
+    private static final int httpsDefaultPort = 443;
+    private static final int maxLineLength = 8192;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final SSLSocketFactory sslSocketFactory;
+    private final HostnameVerifier hostnameVerifier;
+
+    public SocketHttpTransport() {
+        this(0, 0);
+    }
+
+    /*
+     * Timeouts of 0 wait indefinitely, same as a plain HttpURLConnection.
+     */
+    public SocketHttpTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        this(connectTimeoutMillis, readTimeoutMillis, null, null);
+    }
+
+    /*
+     * A null sslSocketFactory uses the HttpsURLConnection default. A null hostnameVerifier verifies the server
+     * certificate against the host name during the TLS handshake, the same way HttpsURLConnection does.
+     */
+    public SocketHttpTransport(int connectTimeoutMillis, int readTimeoutMillis, SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier) {
+        if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeouts cannot be negative.");
+        }
+
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.sslSocketFactory = sslSocketFactory;
+        this.hostnameVerifier = hostnameVerifier;
+    }
+
+    @Override
+    public IHttpResponse send(HttpRequest request) throws IOException {
+        SocketHttpConnection connection = new SocketHttpConnection(request.getUrl());
+        connection.closeAfterResponse = true;
+        return connection.send(request);
+    }
+
+    @Override
+    public IHttpConnection openConnection(URL url) {
+        return new SocketHttpConnection(url);
+    }
+
+    private class SocketHttpConnection implements IHttpConnection {
+        private final String protocol;
+        private final String host;
+        private final int port;
+        private final boolean secure;
+
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+        private SSLSession sslSession;
+        private boolean reusable;
+        private boolean closeAfterResponse;
+        private SocketHttpResponse activeResponse;
+
+        SocketHttpConnection(URL url) {
+            this.protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+            if (!protocol.equals("http") && !protocol.equals("https")) {
+                throw new IllegalArgumentException("Unsupported protocol for url: " + url);
+            }
+
+            this.secure = protocol.equals("https");
+            this.host = url.getHost();
+            this.port = url.getPort() != -1 ? url.getPort() : (secure ? httpsDefaultPort : httpDefaultPort);
+        }
+
+        @Override
+        public IHttpResponse send(HttpRequest request) throws IOException {
+            URL url = request.getUrl();
+            int requestPort = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+            if (!protocol.equalsIgnoreCase(url.getProtocol()) || !host.equalsIgnoreCase(url.getHost()) || port != requestPort) {
+                throw new IllegalArgumentException("Request url " + url + " does not match the connection origin.");
+            }
+
+            if (activeResponse != null) {
+                // the previous body was not read to the end, so the socket cannot carry another request
+                activeResponse.release();
+            }
+
+            FetchPhaseTimings phaseTimings = new FetchPhaseTimings();
+            boolean connectionReused = reusable && socket != null && !socket.isClosed();
+            if (!connectionReused) {
+                closeSocket();
+                connect(phaseTimings);
+            }
+
+            reusable = false;
+            try {
+                return exchange(request, phaseTimings, connectionReused);
+            } catch (IOException ex) {
+                closeSocket();
+                if (!connectionReused || !isIdempotent(request.getMethod())) {
+                    throw ex;
+                }
+            }
+
+            // the server closed the idle keep-alive connection before we used it; retry once on a new connection
+            phaseTimings = new FetchPhaseTimings();
+            connect(phaseTimings);
+            try {
+                return exchange(request, phaseTimings, false);
+            } catch (IOException ex) {
+                closeSocket();
+                throw ex;
+            }
+        }
+
+        @Override
+        public void close() {
+            closeSocket();
+        }
+
+        private void connect(FetchPhaseTimings phaseTimings) throws IOException {
+            long dnsStart = System.nanoTime();
+            InetAddress[] addresses = InetAddress.getAllByName(host);
+            long tcpStart = System.nanoTime();
+            phaseTimings.setDnsNanos(tcpStart - dnsStart);
+
+            Socket plainSocket = null;
+            IOException connectError = null;
+            for (InetAddress address : addresses) {
+                Socket candidate = new Socket();
+                try {
+                    candidate.connect(new InetSocketAddress(address, port), connectTimeoutMillis);
+                    plainSocket = candidate;
+                    break;
+                } catch (IOException ex) {
+                    candidate.close();
+                    connectError = ex;
+                }
+            }
+
+            if (plainSocket == null) {
+                throw connectError != null ? connectError : new IOException("No addresses found for host: " + host);
+            }
+
+            long tcpEnd = System.nanoTime();
+            phaseTimings.setTcpConnectNanos(tcpEnd - tcpStart);
+
+            try {
+                plainSocket.setSoTimeout(readTimeoutMillis);
+                plainSocket.setTcpNoDelay(true);
+                socket = plainSocket;
+                if (secure) {
+                    socket = startTls(plainSocket);
+                    phaseTimings.setTlsHandshakeNanos(System.nanoTime() - tcpEnd);
+                }
+
+                in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException ex) {
+                plainSocket.close();
+                socket = null;
+                throw ex;
+            }
+        }
+
+        private Socket startTls(Socket plainSocket) throws IOException {
+            SSLSocketFactory factory = sslSocketFactory != null ? sslSocketFactory : HttpsURLConnection.getDefaultSSLSocketFactory();
+            SSLSocket sslSocket = (SSLSocket) factory.createSocket(plainSocket, host, port, true);
+            if (hostnameVerifier == null) {
+                SSLParameters sslParameters = sslSocket.getSSLParameters();
+                sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(sslParameters);
+            }
+
+            sslSocket.startHandshake();
+            sslSession = sslSocket.getSession();
+            if (hostnameVerifier != null && !hostnameVerifier.verify(host, sslSession)) {
+                sslSocket.close();
+                throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+            }
+
+            return sslSocket;
+        }
+
+        private SocketHttpResponse exchange(HttpRequest request, FetchPhaseTimings phaseTimings, boolean connectionReused) throws IOException {
+            long requestStart = System.nanoTime();
+            writeRequest(request);
+
+            String statusLine;
+            Map<String, String> headers;
+            int statusCode;
+            do {
+                statusLine = readLine(in);
+                if (statusLine == null) {
+                    throw new EOFException("Connection closed before a response was received from " + host);
+                }
+
+                statusCode = parseStatusCode(statusLine);
+                headers = readHeaders(in);
+            } while (statusCode >= 100 && statusCode < 200);
+
+            phaseTimings.setTimeToFirstByteNanos(System.nanoTime() - requestStart);
+
+            boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"))
+                    && (!statusLine.startsWith("HTTP/1.0") || "keep-alive".equalsIgnoreCase(headers.get("connection")));
+
+            InputStream body;
+            if (request.getMethod().equalsIgnoreCase("HEAD") || statusCode == 204 || statusCode == 304) {
+                body = new FixedLengthBodyStream(in, 0);
+            } else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                body = new ChunkedBodyStream(in);
+            } else if (headers.containsKey("content-length")) {
+                body = new FixedLengthBodyStream(in, parseContentLength(headers.get("content-length")));
+            } else {
+                // body runs until the server closes the connection
+                body = in;
+                keepAlive = false;
+            }
+
+            activeResponse = new SocketHttpResponse(this, request.getUrl(), statusCode, headers, body, keepAlive, phaseTimings, connectionReused);
+            return activeResponse;
+        }
+
+        private void writeRequest(HttpRequest request) throws IOException {
+            URL url = request.getUrl();
+            String path = url.getFile().isEmpty() ? "/" : url.getFile();
+            boolean defaultPort = port == (secure ? httpsDefaultPort : httpDefaultPort);
+
+            StringBuilder head = new StringBuilder();
+            head.append(request.getMethod()).append(' ').append(path).append(" HTTP/1.1\r\n");
+            head.append("Host: ").append(host);
+            if (!defaultPort) {
+                head.append(':').append(port);
+            }
+            head.append("\r\n");
+
+            boolean hasUserAgent = false;
+            boolean hasAccept = false;
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                hasUserAgent |= header.getKey().equalsIgnoreCase("User-Agent");
+                hasAccept |= header.getKey().equalsIgnoreCase("Accept");
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+
+            if (!hasUserAgent) {
+                head.append("User-Agent: Java/").append(System.getProperty("java.version")).append("\r\n");
+            }
+
+            if (!hasAccept) {
+                head.append("Accept: */*\r\n");
+            }
+
+            byte[] body = request.getBody();
+            if (body != null) {
+                head.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+
+            if (closeAfterResponse) {
+                head.append("Connection: close\r\n");
+            }
+
+            head.append("\r\n");
+            out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (body != null) {
+                out.write(body);
+            }
+            out.flush();
+        }
+
+        private void responseDone(boolean keepAlive) {
+            activeResponse = null;
+            if (keepAlive && !closeAfterResponse) {
+                reusable = true;
+            } else {
+                closeSocket();
+            }
+        }
+
+        private void closeSocket() {
+            activeResponse = null;
+            reusable = false;
+            sslSession = null;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // nothing left to release
+                }
+                socket = null;
+            }
+        }
+    }
+
+    private static class SocketHttpResponse implements IHttpResponse {
+        private final SocketHttpConnection connection;
+        private final URL url;
+        private final int statusCode;
+        private final Map<String, String> headers;
+        private final InputStream body;
+        private final boolean keepAlive;
+        private final FetchPhaseTimings phaseTimings;
+        private final boolean connectionReused;
+        private final Certificate[] serverCertificates;
+        private boolean released;
+
+        SocketHttpResponse(SocketHttpConnection connection, URL url, int statusCode, Map<String, String> headers, InputStream body, boolean keepAlive, FetchPhaseTimings phaseTimings, boolean connectionReused) throws SSLPeerUnverifiedException {
+            this.connection = connection;
+            this.url = url;
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+            this.keepAlive = keepAlive;
+            this.phaseTimings = phaseTimings;
+            this.connectionReused = connectionReused;
+            this.serverCertificates = connection.sslSession != null ? connection.sslSession.getPeerCertificates() : null;
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        @Override
+        public Certificate[] getServerCertificates() {
+            return serverCertificates;
+        }
+
+        /*
+         * Mirrors HttpURLConnection.getInputStream(), which fails for error responses.
+         */
+        @Override
+        public InputStream getBody() throws IOException {
+            if (statusCode >= 400) {
+                throw new IOException("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+            }
+
+            return body;
+        }
+
+        @Override
+        public FetchPhaseTimings getPhaseTimings() {
+            return phaseTimings;
+        }
+
+        @Override
+        public boolean isConnectionReused() {
+            return connectionReused;
+        }
+
+        /*
+         * Releases the connection for the next request if the body was read to the end, otherwise closes it.
+         */
+        @Override
+        public void close() {
+            release();
+        }
+
+        @Override
+        public void disconnect() {
+            if (!released) {
+                released = true;
+                connection.closeSocket();
+            }
+        }
+
+        private void release() {
+            if (released) {
+                return;
+            }
+
+            released = true;
+            boolean bodyConsumed = body instanceof BodyStream && ((BodyStream) body).isComplete();
+            connection.responseDone(keepAlive && bodyConsumed);
+        }
+    }
+
+    private abstract static class BodyStream extends InputStream {
+        abstract boolean isComplete();
+    }
+
+    private static class FixedLengthBodyStream extends BodyStream {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthBodyStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        boolean isComplete() {
+            return remaining == 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed before the response body was complete");
+            }
+
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+
+            int bytesRead = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (bytesRead == -1) {
+                throw new EOFException("Connection closed before the response body was complete");
+            }
+
+            remaining -= bytesRead;
+            return bytesRead;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    private static class ChunkedBodyStream extends BodyStream {
+        private final InputStream in;
+        private long chunkRemaining;
+        private boolean complete;
+
+        ChunkedBodyStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int bytesRead = read(single, 0, 1);
+            return bytesRead == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (complete) {
+                return -1;
+            }
+
+            if (chunkRemaining == 0) {
+                chunkRemaining = readChunkSize();
+                if (chunkRemaining == 0) {
+                    // last chunk; skip any trailers
+                    readHeaders(in);
+                    complete = true;
+                    return -1;
+                }
+            }
+
+            int bytesRead = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (bytesRead == -1) {
+                throw new EOFException("Connection closed before the chunked response body was complete");
+            }
+
+            chunkRemaining -= bytesRead;
+            if (chunkRemaining == 0) {
+                readLine(in); // CRLF closing the chunk
+            }
+
+            return bytesRead;
+        }
+
+        private long readChunkSize() throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                throw new EOFException("Connection closed while reading the chunk size");
+            }
+
+            int extensionStart = line.indexOf(';');
+            String size = (extensionStart >= 0 ? line.substring(0, extensionStart) : line).trim();
+            try {
+                return Long.parseLong(size, 16);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid chunk size: " + line);
+            }
+        }
+    }
+
+    private static boolean isIdempotent(String method) {
+        return method.equalsIgnoreCase("GET") || method.equalsIgnoreCase("HEAD") || method.equalsIgnoreCase("OPTIONS");
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException {
+        // HTTP/1.1 200 OK
+        int codeStart = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || codeStart < 0 || statusLine.length() < codeStart + 4) {
+            throw new IOException("Invalid http status line: " + statusLine);
+        }
+
+        try {
+            return Integer.parseInt(statusLine.substring(codeStart + 1, codeStart + 4));
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid http status line: " + statusLine);
+        }
+    }
+
+    private static long parseContentLength(String contentLength) throws IOException {
+        try {
+            long length = Long.parseLong(contentLength.trim());
+            if (length >= 0) {
+                return length;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+
+        throw new IOException("Invalid Content-Length: " + contentLength);
+    }
+
+    /*
+     * Reads header lines up to the empty line ending the header block. Header names are lower cased and repeated
+     * headers are folded into one comma separated value.
+     */
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int separator = line.indexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+
+            String name = line.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(separator + 1).trim();
+            String existing = headers.get(name);
+            headers.put(name, existing == null ? value : existing + ", " + value);
+        }
+
+        return headers;
+    }
+
+    /*
+     * Reads a CRLF (or LF) terminated line as ISO-8859-1; returns null at end of stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+
+            if (line.size() >= maxLineLength) {
+                throw new IOException("Http header line too long");
+            }
+            line.write(b);
+        }
+
+        return line.size() == 0 ? null : new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,240 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.THROUGHPUT_HTTP;
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.THROUGHPUT_HTTPS;
+
+/*
+ * Downloads the measurement object over several parallel connections and samples the bytes received across all of
+ * them every sampling interval. The samples give the average rate, the end of slow start (the first interval that
+ * reaches slowStartThreshold of the peak interval rate) and the steady-state rate from there on. Transfers still
+ * running after maxDurationMillis are cut off, so a large object bounds the data used rather than the run time.
+ *
+ * There is no default object: the configured one has to be large enough for the transfer to leave slow start.
+ */
+public class ThroughputMeasurement implements IMeasurement {
+
+    public static final int defaultStreamCount = 4;
+    public static final int defaultSampleIntervalMillis = 100;
+    public static final int defaultMaxDurationMillis = 10000;
+
+    private static final double slowStartThreshold = 0.8;
+    private static final int readBufferSize = 64 * 1024;
+
+    private final String measurementEndpoint;
+    private final int measurementType;
+    private final String experimentId;
+    private final String objectPath;
+    private final int streamCount;
+    private final int sampleIntervalMillis;
+    private final int maxDurationMillis;
+    private final IHttpTransport transport;
+
+    public ThroughputMeasurement(String measurementEndpoint, int measurementType, String experimentId, String objectPath, MeasurementContext context) {
+        this(measurementEndpoint, measurementType, experimentId, objectPath, context, defaultStreamCount, defaultSampleIntervalMillis, defaultMaxDurationMillis);
+    }
+
+    public ThroughputMeasurement(String measurementEndpoint, int measurementType, String experimentId, String objectPath, MeasurementContext context, int streamCount, int sampleIntervalMillis, int maxDurationMillis) {
+        if (measurementEndpoint == null || measurementEndpoint.isEmpty() || !MeasurementTypes.isThroughputMeasurementType(measurementType)) {
+            throw new IllegalArgumentException("measurementEndpoint is empty or measurementType is invalid");
+        }
+
+        if (objectPath == null || objectPath.isEmpty()) {
+            throw new IllegalArgumentException("objectPath is required for a throughput measurement");
+        }
+
+        if (streamCount <= 0 || sampleIntervalMillis <= 0 || maxDurationMillis <= 0) {
+            throw new IllegalArgumentException("streamCount, sampleIntervalMillis and maxDurationMillis must be positive");
+        }
+
+        this.measurementEndpoint = measurementEndpoint;
+        this.measurementType = measurementType;
+        this.experimentId = experimentId != null ? experimentId : "";
+        this.objectPath = Endpoints.normalizeObjectPath(objectPath, null);
+        this.streamCount = streamCount;
+        this.sampleIntervalMillis = sampleIntervalMillis;
+        this.maxDurationMillis = maxDurationMillis;
+        this.transport = context.getHttpTransport();
+    }
+
+    @Override
+    public void takeAndReportMeasurements(List<IReportItem> report) throws IOException, CertificateEncodingException {
+        if ((THROUGHPUT_HTTPS & measurementType) == THROUGHPUT_HTTPS) {
+            report.add(measure(THROUGHPUT_HTTPS, "https"));
+        }
+
+        if ((THROUGHPUT_HTTP & measurementType) == THROUGHPUT_HTTP) {
+            report.add(measure(THROUGHPUT_HTTP, "http"));
+        }
+    }
+
+    private ThroughputReportItem measure(int streamMeasurementType, String scheme) throws IOException {
+        String host = Endpoints.expandWildcardEndpoint(measurementEndpoint);
+
+        ThroughputReportItem reportItem = new ThroughputReportItem(host, Endpoints.objectName(objectPath), experimentId, streamMeasurementType);
+        AtomicLongArray streamBytes = new AtomicLongArray(streamCount);
+        AtomicLongArray streamEndNanos = new AtomicLongArray(streamCount);
+        AtomicReferenceArray<IHttpResponse> responses = new AtomicReferenceArray<IHttpResponse>(streamCount);
+        CountDownLatch finished = new CountDownLatch(streamCount);
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(streamCount, runnable -> {
+            Thread thread = new Thread(runnable, "internet-analyzer-throughput");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Long> sampleNanos = new ArrayList<Long>();
+        List<Long> sampleBytes = new ArrayList<Long>();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < streamCount; i++) {
+                final int stream = i;
+                // a distinct query per stream keeps caches from collapsing the parallel requests
+                URL url = new URL(scheme + "://" + host + objectPath + "?" + FetchMeasurement.generateAlphaNumericGuidStr());
+                executor.execute(() -> {
+                    try {
+                        download(url, stream, streamBytes, responses, cancelled);
+                    } finally {
+                        streamEndNanos.set(stream, System.nanoTime());
+                        finished.countDown();
+                    }
+                });
+            }
+
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxDurationMillis);
+            long nextSample = start;
+            boolean done = false;
+            while (!done) {
+                nextSample = Math.min(nextSample + TimeUnit.MILLISECONDS.toNanos(sampleIntervalMillis), deadline);
+                done = finished.await(Math.max(0, nextSample - System.nanoTime()), TimeUnit.NANOSECONDS);
+                long now = System.nanoTime();
+                sampleNanos.add(now - start);
+                sampleBytes.add(totalBytes(streamBytes));
+                done |= now >= deadline;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // cut off the streams that are still downloading; a stream whose response arrives later sees cancelled
+            cancelled.set(true);
+            for (int i = 0; i < streamCount; i++) {
+                IHttpResponse response = responses.getAndSet(i, null);
+                if (response != null) {
+                    response.disconnect();
+                }
+            }
+            executor.shutdownNow();
+        }
+
+        int samples = sampleNanos.size();
+        long bytes = samples > 0 ? sampleBytes.get(samples - 1) : 0;
+        long elapsed = samples > 0 ? sampleNanos.get(samples - 1) : 0;
+        reportItem.setTransfer(elapsed, bytes);
+        if (bytes > 0) {
+            long[] nanos = new long[samples];
+            long[] cumulativeBytes = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                nanos[i] = sampleNanos.get(i);
+                cumulativeBytes[i] = sampleBytes.get(i);
+            }
+
+            int steadyStart = findSteadyStateStart(nanos, cumulativeBytes);
+            long slowStartNanos = steadyStart > 0 ? nanos[steadyStart - 1] : 0;
+            long slowStartBytes = steadyStart > 0 ? cumulativeBytes[steadyStart - 1] : 0;
+            reportItem.setSlowStart(slowStartNanos, ThroughputReportItem.toMbps(bytes - slowStartBytes, elapsed - slowStartNanos));
+
+            double[] streamMbps = new double[streamCount];
+            for (int i = 0; i < streamCount; i++) {
+                // streams cut off at the deadline ended when the sampling did
+                long streamEnd = streamEndNanos.get(i);
+                long streamElapsed = Math.min(streamEnd != 0 ? streamEnd - start : elapsed, elapsed);
+                streamMbps[i] = ThroughputReportItem.toMbps(streamBytes.get(i), streamElapsed);
+            }
+            reportItem.setStreamMbps(streamMbps);
+        }
+
+        return reportItem;
+    }
+
+    private void download(URL url, int stream, AtomicLongArray streamBytes, AtomicReferenceArray<IHttpResponse> responses, AtomicBoolean cancelled) {
+        try {
+            IHttpConnection connection = transport.openConnection(url);
+            try {
+                IHttpResponse response = connection.send(new HttpRequest("GET", url));
+                responses.set(stream, response);
+                // the sampling already ended, so the finally below disconnects the response instead of reading it
+                if (!cancelled.get() && response.getStatusCode() == 200) {
+                    InputStream in = response.getBody();
+                    byte[] buffer = new byte[readBufferSize];
+                    int bytesRead;
+                    while ((bytesRead = in.read(buffer)) != -1) {
+                        streamBytes.addAndGet(stream, bytesRead);
+                    }
+                }
+            } finally {
+                // a response still set was not cut off by the sampling thread
+                IHttpResponse response = responses.getAndSet(stream, null);
+                if (response != null) {
+                    response.disconnect();
+                }
+
+                connection.close();
+            }
+        } catch (IOException ex) {
+            // the bytes received so far still count
+        }
+    }
+
+    /*
+     * Index of the first sampling interval whose rate reaches slowStartThreshold of the fastest interval; the
+     * transfer before it is slow start. cumulativeBytes[i] is the total received at nanos[i] since the start.
+     */
+    static int findSteadyStateStart(long[] nanos, long[] cumulativeBytes) {
+        double[] rates = new double[nanos.length];
+        double peak = 0;
+        for (int i = 0; i < nanos.length; i++) {
+            long intervalNanos = nanos[i] - (i > 0 ? nanos[i - 1] : 0);
+            long intervalBytes = cumulativeBytes[i] - (i > 0 ? cumulativeBytes[i - 1] : 0);
+            rates[i] = intervalNanos > 0 ? (double) intervalBytes / intervalNanos : 0;
+            peak = Math.max(peak, rates[i]);
+        }
+
+        for (int i = 0; i < rates.length; i++) {
+            if (rates[i] >= peak * slowStartThreshold) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    private static long totalBytes(AtomicLongArray streamBytes) {
+        long total = 0;
+        for (int i = 0; i < streamBytes.length(); i++) {
+            total += streamBytes.get(i);
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,130 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Outcome of one ThroughputMeasurement. Result is the transfer time in milliseconds, or -1 when nothing was
+ * received. Mbps is the average over the whole transfer, SteadyMbps the average after slow start (SlowStart, in
+ * milliseconds) and StreamSd the standard deviation of the per-stream Mbps.
+ */
+public class ThroughputReportItem implements IReportItem {
+    private final String requestId;
+    private final String measurementObject;
+    private final String experimentId;
+    private final int measurementType;
+
+    private long elapsedNanos = -1;
+    private long bytesReceived;
+    private long slowStartNanos = -1;
+    private double steadyStateMbps;
+    private double[] streamMbps = new double[0];
+
+    public ThroughputReportItem(String requestId, String measurementObject, String experimentId, int measurementType) {
+        this.requestId = requestId;
+        this.measurementObject = measurementObject;
+        this.experimentId = experimentId;
+        this.measurementType = measurementType;
+    }
+
+    public void setTransfer(long elapsedNanos, long bytesReceived) {
+        this.elapsedNanos = elapsedNanos;
+        this.bytesReceived = bytesReceived;
+    }
+
+    public void setSlowStart(long slowStartNanos, double steadyStateMbps) {
+        this.slowStartNanos = slowStartNanos;
+        this.steadyStateMbps = steadyStateMbps;
+    }
+
+    public void setStreamMbps(double[] streamMbps) {
+        this.streamMbps = streamMbps.clone();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public double getMbps() {
+        return toMbps(bytesReceived, elapsedNanos);
+    }
+
+    public double getSteadyStateMbps() {
+        return steadyStateMbps;
+    }
+
+    public long getSlowStartNanos() {
+        return slowStartNanos;
+    }
+
+    public int getStreams() {
+        return streamMbps.length;
+    }
+
+    public double getStreamStandardDeviationMbps() {
+        if (streamMbps.length == 0) {
+            return 0;
+        }
+
+        double mean = 0;
+        for (double mbps : streamMbps) {
+            mean += mbps;
+        }
+        mean /= streamMbps.length;
+
+        double sumOfSquares = 0;
+        for (double mbps : streamMbps) {
+            sumOfSquares += (mbps - mean) * (mbps - mean);
+        }
+
+        return Math.sqrt(sumOfSquares / streamMbps.length);
+    }
+
+    public JSONObject getFormattedReportItem() throws JSONException {
+        JSONObject resultJSONObj = new JSONObject();
+        if (!requestId.isEmpty()) {
+            resultJSONObj.put("RequestID", requestId);
+        }
+
+        if (!measurementObject.isEmpty()) {
+            resultJSONObj.put("Object", measurementObject);
+        }
+
+        if (!experimentId.isEmpty()) {
+            resultJSONObj.put("Ex", experimentId);
+        }
+
+        resultJSONObj.put("Result", getResult());
+        resultJSONObj.put("T", measurementType);
+        if (bytesReceived > 0) {
+            resultJSONObj.put("Bytes", bytesReceived);
+            resultJSONObj.put("Mbps", round(getMbps()));
+            resultJSONObj.put("SteadyMbps", round(steadyStateMbps));
+            resultJSONObj.put("SlowStart", FetchPhaseTimings.toMillis(slowStartNanos));
+            resultJSONObj.put("Streams", streamMbps.length);
+            resultJSONObj.put("StreamSd", round(getStreamStandardDeviationMbps()));
+        }
+
+        return resultJSONObj;
+    }
+
+    static double toMbps(long bytes, long nanos) {
+        return nanos > 0 ? bytes * 8000.0 / nanos : 0;
+    }
+
+    private long getResult() {
+        return bytesReceived > 0 ? elapsedNanos / 1000000 : -1;
+    }
+
+    // three decimals, a kbps resolution
+    private static double round(double mbps) {
+        return Math.round(mbps * 1000) / 1000.0;
+    }
+}
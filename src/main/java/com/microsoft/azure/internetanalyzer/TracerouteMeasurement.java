@@ -0,0 +1,146 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.TRACERT4;
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.TRACERT6;
+
+/*
+ * Traces the route to the endpoint's IPv4 (TRACERT4) or IPv6 (TRACERT6) address. The probes for all TTLs up to
+ * maxHops are sent at once, so a trace takes about one probe timeout instead of one per hop. The hops after the first
+ * that reached the destination are dropped. Probes go through the context's ITracerouteProbe, which has to be set.
+ */
+public class TracerouteMeasurement implements IMeasurement {
+
+    public static final int defaultMaxHops = 30;
+    public static final int defaultTimeoutMillis = 1000;
+
+    private final String measurementEndpoint;
+    private final int measurementType;
+    private final String experimentId;
+    private final int maxHops;
+    private final int timeoutMillis;
+    private final IDnsResolver resolver;
+    private final ITracerouteProbe probe;
+
+    public TracerouteMeasurement(String measurementEndpoint, int measurementType, String experimentId, MeasurementContext context) {
+        this(measurementEndpoint, measurementType, experimentId, context, defaultMaxHops, defaultTimeoutMillis);
+    }
+
+    public TracerouteMeasurement(String measurementEndpoint, int measurementType, String experimentId, MeasurementContext context, int maxHops, int timeoutMillis) {
+        if (measurementEndpoint == null || measurementEndpoint.isEmpty() || !MeasurementTypes.isTracerouteMeasurementType(measurementType)) {
+            throw new IllegalArgumentException("measurementEndpoint is empty or measurementType is invalid");
+        }
+
+        if (context.getTracerouteProbe() == null) {
+            throw new IllegalArgumentException("no traceroute probe is configured");
+        }
+
+        if (maxHops <= 0 || maxHops > 255 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("maxHops must be between 1 and 255 and timeoutMillis positive");
+        }
+
+        this.measurementEndpoint = measurementEndpoint;
+        this.measurementType = measurementType;
+        this.experimentId = experimentId != null ? experimentId : "";
+        this.maxHops = maxHops;
+        this.timeoutMillis = timeoutMillis;
+        this.resolver = context.getDnsResolver();
+        this.probe = context.getTracerouteProbe();
+    }
+
+    @Override
+    public void takeAndReportMeasurements(List<IReportItem> report) throws IOException, CertificateEncodingException {
+        String endpoint = Endpoints.expandWildcardEndpoint(measurementEndpoint);
+        String host = Endpoints.endpointHost(endpoint);
+
+        InetAddress[] addresses;
+        try {
+            addresses = resolver.resolve(host);
+        } catch (IOException ex) {
+            addresses = new InetAddress[0];
+        }
+
+        if ((TRACERT4 & measurementType) == TRACERT4) {
+            report.add(trace(endpoint, TRACERT4, firstAddress(addresses, Inet4Address.class)));
+        }
+
+        if ((TRACERT6 & measurementType) == TRACERT6) {
+            report.add(trace(endpoint, TRACERT6, firstAddress(addresses, Inet6Address.class)));
+        }
+    }
+
+    private TracerouteReportItem trace(String endpoint, int traceMeasurementType, InetAddress destination) throws IOException {
+        TracerouteReportItem reportItem = new TracerouteReportItem(endpoint, experimentId, traceMeasurementType);
+        if (destination == null) {
+            return reportItem;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxHops, runnable -> {
+            Thread thread = new Thread(runnable, "internet-analyzer-traceroute");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<ITracerouteProbe.Hop>> probes = new ArrayList<Future<ITracerouteProbe.Hop>>(maxHops);
+            for (int ttl = 1; ttl <= maxHops; ttl++) {
+                final int probeTtl = ttl;
+                probes.add(executor.submit(() -> probe.probe(destination, probeTtl, timeoutMillis)));
+            }
+
+            List<ITracerouteProbe.Hop> hops = new ArrayList<ITracerouteProbe.Hop>(maxHops);
+            for (int ttl = 1; ttl <= maxHops; ttl++) {
+                ITracerouteProbe.Hop hop;
+                try {
+                    hop = probes.get(ttl - 1).get();
+                } catch (ExecutionException ex) {
+                    // a failed probe is a hop that did not reply
+                    hop = null;
+                }
+
+                hops.add(hop != null ? hop : new ITracerouteProbe.Hop(ttl, "", -1, false));
+                if (hop != null && hop.isDestinationReached()) {
+                    break;
+                }
+            }
+
+            reportItem.setHops(destination.getHostAddress(), hops);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while tracing the route to " + endpoint);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return reportItem;
+    }
+
+    private static InetAddress firstAddress(InetAddress[] addresses, Class<? extends InetAddress> addressType) {
+        for (InetAddress address : addresses) {
+            if (addressType.isInstance(address)) {
+                return address;
+            }
+        }
+
+        return null;
+    }
+}
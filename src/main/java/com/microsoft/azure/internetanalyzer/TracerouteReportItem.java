@@ -0,0 +1,92 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Outcome of one TracerouteMeasurement. Result is the round trip to the destination in whole milliseconds, or -1 when
+ * it was not reached within the maximum hops. Dst is the traced address and Hops the number of hops probed; Ip and
+ * Rtt list the replying address and the round trip in milliseconds per hop, "" and -1 for hops that did not reply.
+ */
+public class TracerouteReportItem implements IReportItem {
+    private final String requestId;
+    private final String experimentId;
+    private final int measurementType;
+
+    private String destination = "";
+    private List<ITracerouteProbe.Hop> hops = Collections.emptyList();
+
+    public TracerouteReportItem(String requestId, String experimentId, int measurementType) {
+        this.requestId = requestId;
+        this.experimentId = experimentId;
+        this.measurementType = measurementType;
+    }
+
+    /*
+     * Sets the hops in TTL order, up to and including the first one that reached the destination.
+     */
+    public void setHops(String destination, List<ITracerouteProbe.Hop> hops) {
+        this.destination = destination;
+        this.hops = new ArrayList<ITracerouteProbe.Hop>(hops);
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public List<ITracerouteProbe.Hop> getHops() {
+        return Collections.unmodifiableList(hops);
+    }
+
+    public boolean isDestinationReached() {
+        return !hops.isEmpty() && hops.get(hops.size() - 1).isDestinationReached();
+    }
+
+    public JSONObject getFormattedReportItem() throws JSONException {
+        JSONObject resultJSONObj = new JSONObject();
+        if (!requestId.isEmpty()) {
+            resultJSONObj.put("RequestID", requestId);
+        }
+
+        if (!experimentId.isEmpty()) {
+            resultJSONObj.put("Ex", experimentId);
+        }
+
+        resultJSONObj.put("Result", getResult());
+        resultJSONObj.put("T", measurementType);
+        if (!destination.isEmpty()) {
+            resultJSONObj.put("Dst", destination);
+            resultJSONObj.put("Hops", hops.size());
+            JSONArray addresses = new JSONArray();
+            JSONArray rtts = new JSONArray();
+            for (ITracerouteProbe.Hop hop : hops) {
+                addresses.put(hop.getAddress());
+                rtts.put(getRttMillis(hop));
+            }
+            resultJSONObj.put("Ip", addresses);
+            resultJSONObj.put("Rtt", rtts);
+        }
+
+        return resultJSONObj;
+    }
+
+    private static double getRttMillis(ITracerouteProbe.Hop hop) {
+        return hop.getRttNanos() >= 0 ? FetchPhaseTimings.toMillis(hop.getRttNanos()) : -1;
+    }
+
+    private long getResult() {
+        return isDestinationReached() ? hops.get(hops.size() - 1).getRttNanos() / 1000000 : -1;
+    }
+}
@@ -0,0 +1,233 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/*
+ * IHttpTransport built on HttpURLConnection. Connection reuse is left to the JDK (or Android) keep-alive cache, so
+ * reuse can only be observed for https (no new TLS handshake). Plain http responses report reuse as unknown and no
+ * connect time, since connect() may just as well have taken a socket from the keep-alive cache.
+ */
+public class UrlConnectionHttpTransport implements IHttpTransport {
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public UrlConnectionHttpTransport() {
+        this(0, 0);
+    }
+
+    /*
+     * Timeouts of 0 wait indefinitely, same as a plain HttpURLConnection.
+     */
+    public UrlConnectionHttpTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeouts cannot be negative.");
+        }
+
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    @Override
+    public IHttpResponse send(HttpRequest request) throws IOException {
+        URL url = request.getUrl();
+        FetchPhaseTimings phaseTimings = new FetchPhaseTimings();
+
+        // resolve measurements up front so DNS time is reported on its own; the connection below then hits the
+        // resolver cache. Through a proxy the host is resolved by the proxy, and may not resolve locally at all.
+        boolean resolved = request.isMeasurement() && !usesProxy(url);
+        long dnsStart = System.nanoTime();
+        if (resolved) {
+            InetAddress.getAllByName(url.getHost());
+        }
+        long dnsEnd = System.nanoTime();
+        if (resolved) {
+            phaseTimings.setDnsNanos(dnsEnd - dnsStart);
+        }
+
+        URLConnection connection = url.openConnection();
+        if (!(connection instanceof HttpURLConnection)) {
+            throw new IOException("Unsupported protocol for url: " + url);
+        }
+
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        httpConnection.setRequestMethod(request.getMethod());
+        httpConnection.setInstanceFollowRedirects(request.isFollowRedirects());
+        httpConnection.setConnectTimeout(connectTimeoutMillis);
+        httpConnection.setReadTimeout(readTimeoutMillis);
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            httpConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        if (httpConnection instanceof HttpsURLConnection) {
+            HttpsURLConnection httpsConnection = (HttpsURLConnection) httpConnection;
+            httpsConnection.setSSLSocketFactory(PhaseTimingSSLSocketFactory.forDelegate(httpsConnection.getSSLSocketFactory()));
+        }
+
+        byte[] body = request.getBody();
+        if (body != null) {
+            httpConnection.setDoOutput(true);
+            httpConnection.setFixedLengthStreamingMode(body.length);
+        }
+
+        boolean connectionReused = false;
+        PhaseTimingSSLSocketFactory.beginTracking();
+        try {
+            httpConnection.connect();
+        } finally {
+            long connectEnd = System.nanoTime();
+            long tlsStart = PhaseTimingSSLSocketFactory.endTracking();
+            if (httpConnection instanceof HttpsURLConnection && tlsStart < 0) {
+                connectionReused = true;
+            } else if (tlsStart >= 0) {
+                // without the lookup up front, the connect includes it
+                if (resolved) {
+                    phaseTimings.setTcpConnectNanos(tlsStart - dnsEnd);
+                }
+                phaseTimings.setTlsHandshakeNanos(connectEnd - tlsStart);
+            }
+        }
+
+        long requestStart = System.nanoTime();
+        try {
+            if (body != null) {
+                try (OutputStream out = httpConnection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+
+            int statusCode = httpConnection.getResponseCode();
+            phaseTimings.setTimeToFirstByteNanos(System.nanoTime() - requestStart);
+            return new UrlConnectionHttpResponse(httpConnection, statusCode, phaseTimings, connectionReused);
+        } catch (IOException ex) {
+            httpConnection.disconnect();
+            throw ex;
+        }
+    }
+
+    private static boolean usesProxy(URL url) {
+        ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector == null) {
+            return false;
+        }
+
+        try {
+            List<Proxy> proxies = proxySelector.select(url.toURI());
+            for (Proxy proxy : proxies) {
+                if (proxy.type() != Proxy.Type.DIRECT) {
+                    return true;
+                }
+            }
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            // HttpURLConnection falls back to a direct connection as well
+        }
+
+        return false;
+    }
+
+    private static class UrlConnectionHttpResponse implements IHttpResponse {
+        private final HttpURLConnection connection;
+        private final int statusCode;
+        private final FetchPhaseTimings phaseTimings;
+        private final boolean connectionReused;
+        private InputStream body;
+
+        UrlConnectionHttpResponse(HttpURLConnection connection, int statusCode, FetchPhaseTimings phaseTimings, boolean connectionReused) {
+            this.connection = connection;
+            this.statusCode = statusCode;
+            this.phaseTimings = phaseTimings;
+            this.connectionReused = connectionReused;
+        }
+
+        @Override
+        public URL getUrl() {
+            return connection.getURL();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public Certificate[] getServerCertificates() throws IOException {
+            if (connection instanceof HttpsURLConnection) {
+                return ((HttpsURLConnection) connection).getServerCertificates();
+            }
+
+            return null;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = connection.getInputStream();
+            }
+
+            return body;
+        }
+
+        @Override
+        public FetchPhaseTimings getPhaseTimings() {
+            return phaseTimings;
+        }
+
+        @Override
+        public boolean isConnectionReused() {
+            return connectionReused;
+        }
+
+        @Override
+        public boolean isConnectionReuseKnown() {
+            return connection instanceof HttpsURLConnection;
+        }
+
+        /*
+         * Closing a fully read body hands the socket back to the keep-alive cache.
+         */
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.util.Random;
+
+/*
+ * Weighted sampling without replacement over a Fenwick (binary indexed) tree of the weights. The tree is built from
+ * the cumulative weights in O(m); each draw walks down the tree and removes the drawn index in O(log m). The
+ * cumulative weights passed in are only read, so one array can back any number of samplers.
+ */
+class WeightedSampler {
+    private final int[] tree;
+    private final int highestStep;
+    private final Random random;
+    private int remainingWeight;
+
+    WeightedSampler(int[] cumulativeWeights, Random random) {
+        int size = cumulativeWeights.length;
+        this.tree = new int[size + 1];
+        for (int i = 1; i <= size; i++) {
+            int rangeStart = i - (i & -i);
+            tree[i] = cumulativeWeights[i - 1] - (rangeStart == 0 ? 0 : cumulativeWeights[rangeStart - 1]);
+        }
+
+        this.highestStep = size == 0 ? 0 : Integer.highestOneBit(size);
+        this.remainingWeight = size == 0 ? 0 : cumulativeWeights[size - 1];
+        this.random = random;
+    }
+
+    boolean hasNext() {
+        return remainingWeight > 0;
+    }
+
+    /*
+     * Returns the index of the drawn weight, each remaining index with a probability proportional to its weight.
+     * Indexes of weight 0 are never drawn.
+     */
+    int next() {
+        if (remainingWeight <= 0) {
+            throw new IllegalStateException("No weight left to sample from.");
+        }
+
+        int target = random.nextInt(remainingWeight);
+        int position = 0;
+        for (int step = highestStep; step > 0; step >>= 1) {
+            int candidate = position + step;
+            if (candidate < tree.length && tree[candidate] <= target) {
+                position = candidate;
+                target -= tree[candidate];
+            }
+        }
+
+        remove(position);
+        return position;
+    }
+
+    private void remove(int index) {
+        int weight = weightAt(index);
+        remainingWeight -= weight;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] -= weight;
+        }
+    }
+
+    private int weightAt(int index) {
+        // prefix(index + 1) - prefix(index), walking both prefixes down until they meet
+        int weight = tree[index + 1];
+        int stop = (index + 1) - ((index + 1) & -(index + 1));
+        for (int i = index; i > stop; i -= i & -i) {
+            weight -= tree[i];
+        }
+
+        return weight;
+    }
+}
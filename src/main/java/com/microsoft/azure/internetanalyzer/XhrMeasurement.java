@@ -0,0 +1,136 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.security.cert.CertificateEncodingException;
+import java.util.List;
+import java.util.Locale;
+
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.XHRHTTP;
+import static com.microsoft.azure.internetanalyzer.MeasurementTypes.XHRHTTPS;
+
+/*
+ * Reproduces a browser XHR beacon: the custom X-Requested-With header makes the GET a non-simple cross-origin request,
+ * so it is preceded by an OPTIONS preflight from the page's origin. Both go over one connection, which the preflight
+ * opens. The GET is only sent when the preflight response allows it, as a browser would. The page origin is the
+ * context's xhrOrigin unless one is passed in.
+ *
+ * HttpURLConnection silently drops the restricted Origin and Access-Control-Request-* headers, so when the context uses
+ * a UrlConnectionHttpTransport the measurement runs over a SocketHttpTransport with the same timeouts instead.
+ */
+public class XhrMeasurement implements IMeasurement {
+
+    public static final String defaultOrigin = "https://www.microsoft.com";
+
+    private static final String defaultObjectPath = "/apc/trans.gif";
+    private static final String requestedWithHeader = "X-Requested-With";
+
+    private final String measurementEndpoint;
+    private final int measurementType;
+    private final String experimentId;
+    private final String objectPath;
+    private final String origin;
+    private final IHttpTransport transport;
+
+    public XhrMeasurement(String measurementEndpoint, int measurementType, String experimentId, String objectPath, MeasurementContext context) {
+        this(measurementEndpoint, measurementType, experimentId, objectPath, context, context.getXhrOrigin());
+    }
+
+    public XhrMeasurement(String measurementEndpoint, int measurementType, String experimentId, String objectPath, MeasurementContext context, String origin) {
+        if (measurementEndpoint == null || measurementEndpoint.isEmpty() || !MeasurementTypes.isXhrMeasurementType(measurementType)) {
+            throw new IllegalArgumentException("measurementEndpoint is empty or measurementType is invalid");
+        }
+
+        if (origin == null || origin.isEmpty()) {
+            throw new IllegalArgumentException("origin cannot be empty");
+        }
+
+        this.measurementEndpoint = measurementEndpoint;
+        this.measurementType = measurementType;
+        this.experimentId = experimentId != null ? experimentId : "";
+        this.objectPath = Endpoints.normalizeObjectPath(objectPath, defaultObjectPath);
+        this.origin = origin;
+        this.transport = xhrTransport(context.getHttpTransport());
+    }
+
+    /*
+     * A transport that sends the CORS headers as set on the request.
+     */
+    static IHttpTransport xhrTransport(IHttpTransport transport) {
+        if (transport instanceof UrlConnectionHttpTransport) {
+            UrlConnectionHttpTransport urlConnectionTransport = (UrlConnectionHttpTransport) transport;
+            return new SocketHttpTransport(urlConnectionTransport.getConnectTimeoutMillis(), urlConnectionTransport.getReadTimeoutMillis());
+        }
+
+        return transport;
+    }
+
+    @Override
+    public void takeAndReportMeasurements(List<IReportItem> report) throws IOException, CertificateEncodingException {
+        if ((XHRHTTPS & measurementType) == XHRHTTPS) {
+            report.add(measure(XHRHTTPS, "https"));
+        }
+
+        if ((XHRHTTP & measurementType) == XHRHTTP) {
+            report.add(measure(XHRHTTP, "http"));
+        }
+    }
+
+    private XhrReportItem measure(int xhrMeasurementType, String scheme) throws IOException {
+        String host = Endpoints.expandWildcardEndpoint(measurementEndpoint);
+        URL url = new URL(scheme + "://" + host + objectPath);
+        XhrReportItem reportItem = new XhrReportItem(host, Endpoints.objectName(objectPath), experimentId, xhrMeasurementType);
+
+        IHttpConnection connection = transport.openConnection(url);
+        try {
+            HttpRequest preflight = new HttpRequest("OPTIONS", url);
+            preflight.setFollowRedirects(false);
+            preflight.setMeasurement(true);
+            preflight.setHeader("Origin", origin);
+            preflight.setHeader("Access-Control-Request-Method", "GET");
+            preflight.setHeader("Access-Control-Request-Headers", requestedWithHeader.toLowerCase(Locale.ROOT));
+
+            long start = System.nanoTime();
+            IHttpResponse preflightResponse = connection.send(preflight);
+            int preflightStatus = preflightResponse.getStatusCode();
+            String allowedOrigin = preflightResponse.getHeaderField("Access-Control-Allow-Origin");
+            if (FetchMeasurement.drainStream(preflightResponse.getBody()) < 0) {
+                preflightResponse.disconnect();
+                return reportItem;
+            }
+            preflightResponse.close();
+
+            boolean corsAllowed = preflightStatus / 100 == 2 && allowedOrigin != null && ("*".equals(allowedOrigin.trim()) || origin.equals(allowedOrigin.trim()));
+            reportItem.setPreflight(System.nanoTime() - start, preflightStatus, corsAllowed, preflightResponse.getPhaseTimings());
+            if (!corsAllowed) {
+                return reportItem;
+            }
+
+            HttpRequest request = new HttpRequest("GET", url);
+            request.setHeader("Origin", origin);
+            request.setHeader(requestedWithHeader, "XMLHttpRequest");
+
+            start = System.nanoTime();
+            IHttpResponse response = connection.send(request);
+            if (response.getStatusCode() / 100 != 2 || FetchMeasurement.drainStream(response.getBody()) < 0) {
+                response.disconnect();
+                return reportItem;
+            }
+            response.close();
+            reportItem.setRequestNanos(System.nanoTime() - start);
+        } catch (IOException ex) {
+            // reported with the latencies taken so far
+        } finally {
+            connection.close();
+        }
+
+        return reportItem;
+    }
+}
@@ -0,0 +1,97 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Outcome of one XhrMeasurement. Result is the latency of the GET in whole milliseconds, or -1 when it failed or the
+ * preflight did not allow it; Preflight is the latency of the OPTIONS preflight, -1 when it failed, and Cors whether
+ * its response allowed the GET. The phase timings (Dns, Tcp, Tls) are those of the preflight, which opens the
+ * connection, as it does in the browser.
+ */
+public class XhrReportItem implements IReportItem {
+    private final String requestId;
+    private final String measurementObject;
+    private final String experimentId;
+    private final int measurementType;
+
+    private long preflightNanos = -1;
+    private int preflightStatus = -1;
+    private boolean corsAllowed;
+    private FetchPhaseTimings preflightPhaseTimings;
+    private long requestNanos = -1;
+
+    public XhrReportItem(String requestId, String measurementObject, String experimentId, int measurementType) {
+        this.requestId = requestId;
+        this.measurementObject = measurementObject;
+        this.experimentId = experimentId;
+        this.measurementType = measurementType;
+    }
+
+    public void setPreflight(long preflightNanos, int preflightStatus, boolean corsAllowed, FetchPhaseTimings preflightPhaseTimings) {
+        this.preflightNanos = preflightNanos;
+        this.preflightStatus = preflightStatus;
+        this.corsAllowed = corsAllowed;
+        this.preflightPhaseTimings = preflightPhaseTimings;
+    }
+
+    public void setRequestNanos(long requestNanos) {
+        this.requestNanos = requestNanos;
+    }
+
+    public long getPreflightNanos() {
+        return preflightNanos;
+    }
+
+    public int getPreflightStatus() {
+        return preflightStatus;
+    }
+
+    public boolean isCorsAllowed() {
+        return corsAllowed;
+    }
+
+    public long getRequestNanos() {
+        return requestNanos;
+    }
+
+    public JSONObject getFormattedReportItem() throws JSONException {
+        JSONObject resultJSONObj = new JSONObject();
+        if (!requestId.isEmpty()) {
+            resultJSONObj.put("RequestID", requestId);
+        }
+
+        if (!measurementObject.isEmpty()) {
+            resultJSONObj.put("Object", measurementObject);
+        }
+
+        if (!experimentId.isEmpty()) {
+            resultJSONObj.put("Ex", experimentId);
+        }
+
+        resultJSONObj.put("Result", toWholeMillis(requestNanos));
+        resultJSONObj.put("T", measurementType);
+        resultJSONObj.put("Preflight", toWholeMillis(preflightNanos));
+        if (preflightStatus >= 0) {
+            resultJSONObj.put("Status", preflightStatus);
+            resultJSONObj.put("Cors", corsAllowed);
+        }
+
+        if (preflightPhaseTimings != null) {
+            preflightPhaseTimings.addTo(resultJSONObj);
+        }
+
+        return resultJSONObj;
+    }
+
+    private static long toWholeMillis(long nanos) {
+        return nanos >= 0 ? nanos / 1000000 : -1;
+    }
+}
@@ -0,0 +1,113 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ConfigurationCacheUnitTest {
+
+    private static final String localConfigPath = "/src/test/fixtures/goodSimpleConfig.txt";
+    private static final String configUrl = "http://localhost:" + TestUtils.testPort + localConfigPath;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(TestUtils.testPort);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getConfigurationServesFreshEntryFromCache() throws JSONException, IOException {
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Cache-Control", "public, max-age=600")
+                        .withBody(configContents)));
+
+        ConfigurationCache cache = new ConfigurationCache();
+        MeasurementConfiguration first = cache.getConfiguration(configUrl, new UrlConnectionHttpTransport());
+        MeasurementConfiguration second = cache.getConfiguration(configUrl, new UrlConnectionHttpTransport());
+
+        assertEquals(first.getUploadEndpoints().toString(), new JSONObject(configContents).getJSONArray("r").toString());
+        assertSame(second, first);
+        verify(1, getRequestedFor(urlEqualTo(localConfigPath)));
+    }
+
+    @Test
+    public void getConfigurationRevalidatesWithETag() throws JSONException, IOException {
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Cache-Control", "no-cache")
+                        .withHeader("ETag", "\"v1\"")
+                        .withBody(configContents)));
+        stubFor(get(urlEqualTo(localConfigPath))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+
+        ConfigurationCache cache = new ConfigurationCache();
+        MeasurementConfiguration first = cache.getConfiguration(configUrl, new UrlConnectionHttpTransport());
+        MeasurementConfiguration second = cache.getConfiguration(configUrl, new UrlConnectionHttpTransport());
+
+        assertSame(second, first);
+        verify(2, getRequestedFor(urlEqualTo(localConfigPath)));
+        verify(1, getRequestedFor(urlEqualTo(localConfigPath)).withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    @Test
+    public void getConfigurationRefetchesUncacheableResponse() throws JSONException, IOException {
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(configContents)));
+
+        ConfigurationCache cache = new ConfigurationCache();
+        cache.getConfiguration(configUrl, new UrlConnectionHttpTransport());
+        cache.getConfiguration(configUrl, new UrlConnectionHttpTransport());
+
+        verify(2, getRequestedFor(urlEqualTo(localConfigPath)));
+    }
+
+    @Test
+    public void getConfigurationLoadsEntryFromDisk() throws JSONException, IOException {
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Cache-Control", "max-age=600")
+                        .withBody(configContents)));
+
+        new ConfigurationCache(temporaryFolder.getRoot()).getConfiguration(configUrl, new UrlConnectionHttpTransport());
+        MeasurementConfiguration restored = new ConfigurationCache(temporaryFolder.getRoot()).getConfiguration(configUrl, new UrlConnectionHttpTransport());
+
+        assertEquals(restored.getUploadEndpoints().toString(), new JSONObject(configContents).getJSONArray("r").toString());
+        assertEquals(restored.getMeasurementEndpoints().size(), 1);
+        verify(1, getRequestedFor(urlEqualTo(localConfigPath)));
+    }
+}
@@ -0,0 +1,221 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DnsMeasurementUnitTest {
+
+    private DatagramSocket dnsServer;
+    private Thread dnsServerThread;
+    private final AtomicInteger dnsQueries = new AtomicInteger();
+
+    /*
+     * A minimal DNS server answering A queries for names under test.endpoint with 10.1.2.3, other types under it with
+     * no records and everything else with NXDOMAIN. Names starting with "alias." are answered with a CNAME to
+     * abc.test.endpoint followed by its A record, the way a recursive server answers an alias.
+     */
+    @Before
+    public void startDnsServer() throws IOException {
+        dnsServer = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        dnsServerThread = new Thread(() -> {
+            byte[] buffer = new byte[512];
+            while (!dnsServer.isClosed()) {
+                try {
+                    DatagramPacket query = new DatagramPacket(buffer, buffer.length);
+                    dnsServer.receive(query);
+                    dnsQueries.incrementAndGet();
+                    byte[] answer = answer(Arrays.copyOf(query.getData(), query.getLength()));
+                    dnsServer.send(new DatagramPacket(answer, answer.length, query.getSocketAddress()));
+                } catch (IOException ex) {
+                    return;
+                }
+            }
+        });
+        dnsServerThread.setDaemon(true);
+        dnsServerThread.start();
+    }
+
+    @After
+    public void stopDnsServer() throws InterruptedException {
+        dnsServer.close();
+        dnsServerThread.join();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void DnsMeasurementRequiresEndpointTest() {
+        new DnsMeasurement("", "", new MeasurementContext());
+    }
+
+    @Test
+    public void DnsLookupWildcardEndpointTest() throws IOException, CertificateEncodingException, JSONException {
+        List<String> resolved = new ArrayList<String>();
+        MeasurementContext context = new MeasurementContext();
+        context.setDnsResolver(host -> {
+            resolved.add(host);
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 1, 2, 3})};
+        });
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new DnsMeasurement("*.test.endpoint:443", "ex1", context).takeAndReportMeasurements(reportItems);
+        new DnsMeasurement("*.test.endpoint:443", "ex1", context).takeAndReportMeasurements(reportItems);
+
+        // every lookup is a fresh name, resolved without the port
+        assertEquals(resolved.size(), 2);
+        assertTrue(resolved.get(0).endsWith(".test.endpoint"));
+        assertNotEquals(resolved.get(0), resolved.get(1));
+
+        DnsReportItem reportItem = (DnsReportItem) reportItems.get(0);
+        assertTrue(reportItem.getResolutionNanos() >= 0);
+        assertEquals(reportItem.getAddresses().length, 1);
+
+        JSONObject formatted = reportItem.getFormattedReportItem();
+        assertEquals(formatted.getString("RequestID"), resolved.get(0) + ":443");
+        assertEquals(formatted.getString("Ex"), "ex1");
+        assertEquals(formatted.getInt("T"), MeasurementTypes.DNS_LOOKUP);
+        assertEquals(formatted.getJSONArray("Addresses").getString(0), "10.1.2.3");
+        assertTrue(formatted.getLong("Result") >= 0);
+    }
+
+    @Test
+    public void DnsLookupFailureTest() throws IOException, CertificateEncodingException, JSONException {
+        MeasurementContext context = new MeasurementContext();
+        context.setDnsResolver(host -> {
+            throw new UnknownHostException(host);
+        });
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new DnsMeasurement("test.endpoint", "", context).takeAndReportMeasurements(reportItems);
+
+        JSONObject formatted = reportItems.get(0).getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), -1);
+        assertFalse(formatted.has("Addresses"));
+    }
+
+    @Test
+    public void DefaultDnsResolverSharedTest() {
+        // contexts without a resolver of their own share one, along with its DNS contexts
+        assertSame(new MeasurementContext().getDnsResolver(), new MeasurementContext().getDnsResolver());
+        assertSame(new MeasurementContext().getDnsResolver(), JndiDnsResolver.getDefault());
+    }
+
+    @Test
+    public void JndiDnsResolverPreparedOnOtherThreadTest() throws Exception {
+        JndiDnsResolver resolver = new JndiDnsResolver("127.0.0.1:" + dnsServer.getLocalPort());
+        resolver.prepare();
+
+        // the prepared contexts are not tied to the thread that created them
+        final InetAddress[][] addresses = new InetAddress[1][];
+        Thread lookup = new Thread(() -> {
+            try {
+                addresses[0] = resolver.resolve("abc.test.endpoint");
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        lookup.start();
+        lookup.join();
+
+        assertEquals(addresses[0].length, 1);
+        assertEquals(addresses[0][0].getHostAddress(), "10.1.2.3");
+    }
+
+    @Test
+    public void JndiDnsResolverTest() throws IOException {
+        JndiDnsResolver resolver = new JndiDnsResolver("127.0.0.1:" + dnsServer.getLocalPort());
+
+        InetAddress[] addresses = resolver.resolve("abc.test.endpoint");
+        assertEquals(addresses.length, 1);
+        assertEquals(addresses[0].getHostName(), "abc.test.endpoint");
+        assertEquals(addresses[0].getHostAddress(), "10.1.2.3");
+
+        // address literals are not sent to the DNS server
+        assertEquals(resolver.resolve("127.0.0.1")[0].getHostAddress(), "127.0.0.1");
+        assertEquals(resolver.resolve("::1").length, 1);
+
+        try {
+            resolver.resolve("abc.unknown.endpoint");
+            throw new AssertionError("expected an UnknownHostException");
+        } catch (UnknownHostException ex) {
+            assertEquals(ex.getMessage(), "abc.unknown.endpoint");
+        }
+    }
+
+    @Test
+    public void JndiDnsResolverAliasTest() throws IOException {
+        JndiDnsResolver resolver = new JndiDnsResolver("127.0.0.1:" + dnsServer.getLocalPort());
+        resolver.prepare();
+
+        InetAddress[] addresses = resolver.resolve("alias.test.endpoint");
+        assertEquals(addresses.length, 1);
+        assertEquals(addresses[0].getHostName(), "alias.test.endpoint");
+        assertEquals(addresses[0].getHostAddress(), "10.1.2.3");
+
+        // one A and one AAAA query, the CNAME target is taken from the answer instead of being queried again
+        assertEquals(dnsQueries.get(), 2);
+    }
+
+    private static byte[] answer(byte[] query) {
+        // the question starts after the 12 byte header: labels, then type and class
+        int offset = 12;
+        StringBuilder name = new StringBuilder();
+        while (query[offset] != 0) {
+            int length = query[offset];
+            name.append(new String(query, offset + 1, length)).append('.');
+            offset += length + 1;
+        }
+        int questionEnd = offset + 5;
+        int type = ((query[offset + 1] & 0xff) << 8) | (query[offset + 2] & 0xff);
+
+        boolean known = name.toString().endsWith("test.endpoint.");
+        boolean hasAnswer = known && type == 1;
+        boolean alias = hasAnswer && name.toString().startsWith("alias.");
+        ByteBuffer response = ByteBuffer.allocate(questionEnd + 64);
+        response.put(query, 0, 2);
+        response.putShort((short) (known ? 0x8180 : 0x8183));
+        response.putShort((short) 1).putShort((short) (hasAnswer ? (alias ? 2 : 1) : 0)).putShort((short) 0).putShort((short) 0);
+        response.put(query, 12, questionEnd - 12);
+        int addressOwner = 0xc00c;
+        if (alias) {
+            // a pointer to the question name, type CNAME, class IN, a 60s ttl and the target abc.test.endpoint
+            byte[] target = {3, 'a', 'b', 'c', 4, 't', 'e', 's', 't', 8, 'e', 'n', 'd', 'p', 'o', 'i', 'n', 't', 0};
+            response.putShort((short) 0xc00c).putShort((short) 5).putShort((short) 1).putInt(60).putShort((short) target.length);
+            addressOwner = 0xc000 | response.position();
+            response.put(target);
+        }
+        if (hasAnswer) {
+            // a pointer to the owner name, type A, class IN, a 60s ttl and the address
+            response.putShort((short) addressOwner).putShort((short) 1).putShort((short) 1).putInt(60).putShort((short) 4);
+            response.put(new byte[]{10, 1, 2, 3});
+        }
+
+        return Arrays.copyOf(response.array(), response.position());
+    }
+}
@@ -0,0 +1,42 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointsUnitTest {
+
+    @Test
+    public void expandWildcardEndpoint() {
+        String expanded = Endpoints.expandWildcardEndpoint("*.test.endpoint");
+        assertTrue(expanded.matches("^[0-9a-f]{32}\\.test\\.endpoint$"));
+        assertNotEquals(Endpoints.expandWildcardEndpoint("*.test.endpoint"), expanded);
+        assertEquals(Endpoints.expandWildcardEndpoint("test.endpoint:8080"), "test.endpoint:8080");
+    }
+
+    @Test
+    public void endpointHostAndPort() {
+        assertEquals(Endpoints.endpointHost("test.endpoint:8080"), "test.endpoint");
+        assertEquals(Endpoints.endpointPort("test.endpoint:8080", 7), 8080);
+        assertEquals(Endpoints.endpointHost("test.endpoint"), "test.endpoint");
+        assertEquals(Endpoints.endpointPort("test.endpoint", 7), 7);
+        assertEquals(Endpoints.endpointHost("::1"), "::1");
+        assertEquals(Endpoints.endpointPort("::1", 7), 7);
+    }
+
+    @Test
+    public void objectPathHelpers() {
+        assertEquals(Endpoints.normalizeObjectPath("", "/apc/trans.gif"), "/apc/trans.gif");
+        assertEquals(Endpoints.normalizeObjectPath("obj/big.bin", "/apc/trans.gif"), "/obj/big.bin");
+        assertEquals(Endpoints.objectName("/obj/big.bin"), "big.bin");
+    }
+}
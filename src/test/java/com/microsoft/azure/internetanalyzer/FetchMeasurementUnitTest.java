@@ -10,12 +10,23 @@ package com.microsoft.azure.internetanalyzer;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +38,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class FetchMeasurementUnitTest {
@@ -488,4 +500,253 @@ public class FetchMeasurementUnitTest {
         fetchMeasurement.takeAndReportMeasurements(reportItems);
         assertEquals(reportItems.size(), expectedReportItems);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void takeAndReportMeasurementPhaseTimingsReported() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("")));
+
+        String measurementEndpoint = "localhost:" + TestUtils.testPort + "";
+        FetchMeasurement fetchMeasurement = new FetchMeasurement(measurementEndpoint, measurementTypeHttp, experimentId, "", new MeasurementContext(new SocketHttpTransport()));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        fetchMeasurement.takeAndReportMeasurements(reportItems);
+        assertEquals(reportItems.size(), 2);
+
+        JSONObject cold = reportItems.get(0).getFormattedReportItem();
+        assertEquals(cold.getString("Conn"), "cold");
+        assertTrue(cold.getDouble("Dns") >= 0);
+        assertTrue(cold.getDouble("Tcp") >= 0);
+        assertTrue(cold.getDouble("Ttfb") >= 0);
+        assertTrue(cold.getDouble("Dl") >= 0);
+        assertFalse(cold.has("Tls")); // plain http fetch has no TLS handshake
+
+        // the warm fetch reuses the cold connection, so there is no DNS or connect phase to report
+        JSONObject warm = reportItems.get(1).getFormattedReportItem();
+        assertEquals(warm.getString("Conn"), "warm");
+        assertFalse(warm.has("Dns"));
+        assertFalse(warm.has("Tcp"));
+        assertTrue(warm.getDouble("Ttfb") >= 0);
+        assertTrue(warm.getDouble("Dl") >= 0);
+    }
+
+    @Test
+    public void takeAndReportMeasurementUrlConnectionPlainHttpHasNoConnectTime() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("")));
+
+        String measurementEndpoint = "localhost:" + TestUtils.testPort + "";
+        FetchMeasurement fetchMeasurement = new FetchMeasurement(measurementEndpoint, measurementTypeHttp, experimentId, "", new MeasurementContext(new UrlConnectionHttpTransport()));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        fetchMeasurement.takeAndReportMeasurements(reportItems);
+        assertEquals(reportItems.size(), 2);
+
+        // HttpURLConnection does not tell whether a plain http connect reused a keep-alive socket
+        for (IReportItem reportItem : reportItems) {
+            JSONObject formatted = reportItem.getFormattedReportItem();
+            assertFalse(formatted.has("Tcp"));
+            assertFalse(formatted.has("Reused"));
+            assertTrue(formatted.getDouble("Ttfb") >= 0);
+        }
+    }
+
+    @Test
+    public void urlConnectionResolvesOnlyMeasurementRequestsTest() throws IOException {
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+
+        UrlConnectionHttpTransport transport = new UrlConnectionHttpTransport();
+        URL url = new URL("http://localhost:" + TestUtils.testPort + "/apc/trans.gif");
+
+        IHttpResponse response = transport.send(new HttpRequest("GET", url));
+        assertEquals(response.getPhaseTimings().getDnsNanos(), -1);
+        response.close();
+
+        HttpRequest measurementRequest = new HttpRequest("GET", url);
+        measurementRequest.setMeasurement(true);
+        response = transport.send(measurementRequest);
+        assertTrue(response.getPhaseTimings().getDnsNanos() >= 0);
+        response.close();
+    }
+
+    @Test
+    public void urlConnectionLeavesProxiedHostsToTheProxyTest() throws IOException {
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+
+        // the WireMock server stands in for the proxy; the host itself does not resolve
+        ProxySelector defaultProxySelector = ProxySelector.getDefault();
+        ProxySelector.setDefault(new ProxySelector() {
+            @Override
+            public List<Proxy> select(URI uri) {
+                return Collections.singletonList(new Proxy(Proxy.Type.HTTP, new InetSocketAddress("localhost", TestUtils.testPort)));
+            }
+
+            @Override
+            public void connectFailed(URI uri, SocketAddress address, IOException ex) {
+            }
+        });
+        try {
+            HttpRequest request = new HttpRequest("GET", new URL("http://unresolvable.invalid/apc/trans.gif"));
+            request.setMeasurement(true);
+            IHttpResponse response = new UrlConnectionHttpTransport().send(request);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getPhaseTimings().getDnsNanos(), -1);
+            response.close();
+        } finally {
+            ProxySelector.setDefault(defaultProxySelector);
+        }
+    }
+
+    @Test
+    public void takeAndReportMeasurementWarmReusesConnection() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("")));
+
+        String measurementEndpoint = "localhost:" + TestUtils.testPort + "";
+        FetchMeasurement fetchMeasurement = new FetchMeasurement(measurementEndpoint, measurementTypeHttp, experimentId, "", new MeasurementContext(new SocketHttpTransport()));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        fetchMeasurement.takeAndReportMeasurements(reportItems);
+        assertEquals(reportItems.size(), 2);
+        assertFalse(reportItems.get(0).getFormattedReportItem().getBoolean("Reused"));
+        assertTrue(reportItems.get(1).getFormattedReportItem().getBoolean("Reused"));
+    }
+
+    @Test
+    public void takeAndReportMeasurementWarmReconnectsWhenServerClosesConnection() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Connection", "close")
+                        .withBody("")));
+
+        String measurementEndpoint = "localhost:" + TestUtils.testPort + "";
+        FetchMeasurement fetchMeasurement = new FetchMeasurement(measurementEndpoint, measurementTypeHttp, experimentId, "", new MeasurementContext(new SocketHttpTransport()));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        fetchMeasurement.takeAndReportMeasurements(reportItems);
+        assertEquals(reportItems.size(), 2);
+        assertFalse(reportItems.get(1).getFormattedReportItem().getBoolean("Reused"));
+        assertTrue(reportItems.get(1).getFormattedReportItem().getLong("Result") >= 0);
+    }
+
+    @Test
+    public void takeAndReportMeasurementSubMillisecondColdFetchKeepsWarm() throws IOException, CertificateEncodingException, JSONException {
+        // an in-memory transport answers well under a millisecond, so the cold fetch reports a latency of 0
+        IHttpTransport instantTransport = request -> new IHttpResponse() {
+            @Override
+            public URL getUrl() {
+                return request.getUrl();
+            }
+
+            @Override
+            public int getStatusCode() {
+                return 200;
+            }
+
+            @Override
+            public String getHeaderField(String name) {
+                return null;
+            }
+
+            @Override
+            public Certificate[] getServerCertificates() {
+                return null;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            @Override
+            public FetchPhaseTimings getPhaseTimings() {
+                return new FetchPhaseTimings();
+            }
+
+            @Override
+            public boolean isConnectionReused() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void disconnect() {
+            }
+        };
+
+        FetchMeasurement fetchMeasurement = new FetchMeasurement("test.endpoint", measurementTypeHttp, experimentId, "", new MeasurementContext(instantTransport));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        fetchMeasurement.takeAndReportMeasurements(reportItems);
+        assertEquals(reportItems.size(), 2);
+        assertEquals(reportItems.get(1).getFormattedReportItem().getString("Conn"), "warm");
+    }
+
+    @Test
+    public void drainStreamCountsBytes() {
+        byte[] payload = new byte[20000];
+        assertEquals(FetchMeasurement.drainStream(new ByteArrayInputStream(payload)), payload.length);
+        assertEquals(FetchMeasurement.drainStream(new ByteArrayInputStream(new byte[0])), 0);
+    }
+
+    @Test
+    public void takeAndReportMeasurementBytesReported() throws IOException, CertificateEncodingException, JSONException {
+        String body = "GIF89a-test-body";
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(body)));
+
+        String measurementEndpoint = "localhost:" + TestUtils.testPort + "";
+        FetchMeasurement fetchMeasurement = new FetchMeasurement(measurementEndpoint, measurementTypeHttp, experimentId, "");
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        fetchMeasurement.takeAndReportMeasurements(reportItems);
+        assertEquals(reportItems.size(), 2);
+
+        for (IReportItem reportItem : reportItems) {
+            assertEquals(reportItem.getFormattedReportItem().getLong("Bytes"), body.length());
+        }
+    }
+
+    @Test
+    public void takeAndReportMeasurementFollowsHttpToHttpRedirect() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(get(urlPathMatching("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(302)
+                        .withHeader("Location", "/moved/trans.gif")));
+        stubFor(get(urlPathMatching("/moved/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("GIF89a")));
+
+        String measurementEndpoint = "localhost:" + TestUtils.testPort + "";
+        for (IHttpTransport transport : new IHttpTransport[]{new SocketHttpTransport(), new UrlConnectionHttpTransport()}) {
+            FetchMeasurement fetchMeasurement = new FetchMeasurement(measurementEndpoint, measurementTypeHttp, experimentId, "", new MeasurementContext(transport));
+
+            List<IReportItem> reportItems = new ArrayList<IReportItem>();
+            fetchMeasurement.takeAndReportMeasurements(reportItems);
+            assertEquals(reportItems.size(), 2);
+
+            // the redirect target is measured, not the 302
+            for (IReportItem reportItem : reportItems) {
+                assertTrue(reportItem.getFormattedReportItem().getLong("Result") >= 0);
+                assertEquals(reportItem.getFormattedReportItem().getLong("Bytes"), 6);
+            }
+        }
+    }
+}
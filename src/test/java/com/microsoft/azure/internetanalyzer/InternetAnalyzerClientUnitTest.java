@@ -8,6 +8,7 @@
 package com.microsoft.azure.internetanalyzer;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
 
 import org.apache.http.HttpStatus;
 import org.json.JSONArray;
@@ -17,17 +18,31 @@ import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -335,4 +350,476 @@ public class InternetAnalyzerClientUnitTest {
 
         assertTrue(internetAnalyzerConfigurations.equals(""));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void GetConfigurationWithoutUrlsTest() throws IOException {
+        try {
+            InternetAnalyzerClient.getConfiguration(new String[0]);
+            Assert.fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(ex.getMessage(), "At least one configuration url is required.");
+        }
+
+        try {
+            InternetAnalyzerClient.getFirstSuccessfulConfiguration(new String[0], 100);
+            Assert.fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(ex.getMessage(), "At least one configuration url is required.");
+        }
+    }
+
+    @Test
+    public void GetConfigurationUsesProvidedHttpTransportTest() throws JSONException, IOException {
+
+        String localConfigPath = "/src/test/fixtures/goodSimpleConfig.txt";
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(configContents)));
+
+        final List<HttpRequest> sentRequests = new ArrayList<>();
+        final IHttpTransport urlConnectionTransport = new UrlConnectionHttpTransport();
+        IHttpTransport recordingTransport = request -> {
+            sentRequests.add(request);
+            return urlConnectionTransport.send(request);
+        };
+
+        String configurationStr = "http://localhost:" + TestUtils.testPort + localConfigPath;
+        String internetAnalyzerConfigurations = InternetAnalyzerClient.getConfiguration(
+                new String[]{configurationStr}, recordingTransport);
+
+        assertEquals(new JSONObject(internetAnalyzerConfigurations).toString(), new JSONObject(configContents).toString());
+        assertEquals(sentRequests.size(), 1);
+        assertEquals(sentRequests.get(0).getUrl().toString(), configurationStr);
+    }
+
+    @Test
+    public void ExecuteBatchedUsesBatcherTransportTest() throws Exception {
+        String localConfigPath = "/src/test/fixtures/goodLocalMultiEndpointConfig.txt";
+        stubFor(get(urlEqualTo(localConfigPath + "?batched"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.GetFileContents(localConfigPath))));
+        stubFor(get(urlMatching(TestUtils.imgPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching("^/test/path/.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        final List<String> sentUrls = Collections.synchronizedList(new ArrayList<>());
+        final IHttpTransport urlConnectionTransport = new UrlConnectionHttpTransport();
+        IHttpTransport recordingTransport = request -> {
+            sentUrls.add(request.getMethod() + " " + request.getUrl().getPath());
+            return urlConnectionTransport.send(request);
+        };
+
+        try (ReportBatcher reportBatcher = new ReportBatcher(recordingTransport, reportUploadUrlScheme)) {
+            InternetAnalyzerClient.executeBatched("INTERNET-ANALYZER-TEST", "tag-test", new String[]{"http://localhost:" + TestUtils.testPort + localConfigPath + "?batched"}, reportBatcher);
+        }
+
+        // the configuration, the measurements and the upload all went through the batcher's transport
+        assertTrue(sentUrls.contains("GET " + localConfigPath));
+        assertEquals(sentUrls.stream().filter(url -> url.startsWith("GET /apc/") || url.startsWith("GET /test/")).count(), 6);
+        assertTrue(sentUrls.contains("POST /report/r.gif"));
+    }
+
+    @Test
+    public void ExecuteFallsThroughInvalidConfigurationTest() throws JSONException, IOException, CertificateEncodingException {
+        String localConfigPath = "/src/test/fixtures/goodLocalMultiEndpointConfig.txt";
+        stubFor(get(urlEqualTo("/malformed/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.GetFileContents("/src/test/fixtures/malformedJsonConfig.txt"))));
+        stubFor(get(urlEqualTo("/empty/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("")));
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.GetFileContents(localConfigPath))));
+        stubFor(get(urlMatching(TestUtils.imgPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching("^/test/path/.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        InternetAnalyzerClient client = InternetAnalyzerClient.builder()
+                .configUrls("http://localhost:" + TestUtils.testPort + "/malformed/config.txt",
+                        "http://localhost:" + TestUtils.testPort + "/empty/config.txt",
+                        "http://localhost:" + TestUtils.testPort + localConfigPath)
+                .reportUploadPrefix(reportUploadUrlScheme)
+                .build();
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult uploadResult = client.execute("INTERNET-ANALYZER-TEST", "tag-test");
+        assertEquals(uploadResult.getResult(), TestUtils.reportSuccess);
+    }
+
+    @Test
+    public void ExecuteNoConfigurationUrlsTest() throws JSONException, IOException, CertificateEncodingException {
+        try {
+            InternetAnalyzerClient.execute("testMonitorId", "testTag", new String[0]);
+            Assert.fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(ex.getMessage(), "At least one configuration url is required.");
+        }
+    }
+
+    @Test
+    public void GetConfigurationFallsThroughFailedUrlTest() throws JSONException, IOException {
+
+        String localConfigPath = "/src/test/fixtures/goodSimpleConfig.txt";
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        stubFor(get(urlEqualTo("/missing/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(configContents)));
+
+        String internetAnalyzerConfigurations = InternetAnalyzerClient.getConfiguration(new String[]{
+                "http://localhost:" + TestUtils.testPort + "/missing/config.txt",
+                "http://localhost:" + TestUtils.testPort + localConfigPath});
+
+        assertEquals(new JSONObject(internetAnalyzerConfigurations).toString(), new JSONObject(configContents).toString());
+    }
+
+    @Test
+    public void GetFirstSuccessfulConfigurationSlowPrimaryTest() throws JSONException, IOException {
+
+        String localConfigPath = "/src/test/fixtures/goodSimpleConfig.txt";
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        int primaryDelayMillis = 3000;
+        stubFor(get(urlEqualTo("/slow/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(primaryDelayMillis)
+                        .withBody(configContents)));
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(configContents)));
+
+        String slowUrl = "http://localhost:" + TestUtils.testPort + "/slow/config.txt";
+        String fastUrl = "http://localhost:" + TestUtils.testPort + localConfigPath;
+
+        long start = System.nanoTime();
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult result = InternetAnalyzerClient.getFirstSuccessfulConfiguration(new String[]{slowUrl, fastUrl}, 100);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(result.getFirstSuccessfulUrl(), fastUrl);
+        assertEquals(new JSONObject(result.getResult()).toString(), new JSONObject(configContents).toString());
+        assertTrue(elapsedMillis < primaryDelayMillis);
+    }
+
+    @Test
+    public void GetFirstSuccessfulConfigurationFailedPrimaryTest() throws JSONException, IOException {
+
+        String localConfigPath = "/src/test/fixtures/goodSimpleConfig.txt";
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        stubFor(get(urlEqualTo("/missing/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(500)));
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(configContents)));
+
+        String failingUrl = "http://localhost:" + TestUtils.testPort + "/missing/config.txt";
+        String goodUrl = "http://localhost:" + TestUtils.testPort + localConfigPath;
+
+        // a failure starts the next url right away instead of waiting out the stagger delay
+        long start = System.nanoTime();
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult result = InternetAnalyzerClient.getFirstSuccessfulConfiguration(new String[]{failingUrl, goodUrl}, 10000);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(result.getFirstSuccessfulUrl(), goodUrl);
+        assertTrue(elapsedMillis < 10000);
+    }
+
+    @Test
+    public void GetFirstSuccessfulConfigurationDisconnectsLosersTest() throws JSONException, IOException {
+
+        String localConfigPath = "/src/test/fixtures/goodSimpleConfig.txt";
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+        // the slow url answers within a few hundred milliseconds but takes 5 seconds to send its body
+        stubFor(get(urlEqualTo("/slow/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withChunkedDribbleDelay(20, 5000)
+                        .withBody(configContents)));
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(configContents)));
+
+        String slowUrl = "http://localhost:" + TestUtils.testPort + "/slow/config.txt";
+        String fastUrl = "http://localhost:" + TestUtils.testPort + localConfigPath;
+
+        List<String> disconnected = Collections.synchronizedList(new ArrayList<String>());
+        UrlConnectionHttpTransport urlConnectionTransport = new UrlConnectionHttpTransport();
+        IHttpTransport transport = request -> {
+            IHttpResponse response = urlConnectionTransport.send(request);
+            return (IHttpResponse) Proxy.newProxyInstance(IHttpResponse.class.getClassLoader(), new Class<?>[]{IHttpResponse.class}, (proxy, method, args) -> {
+                if (method.getName().equals("disconnect")) {
+                    disconnected.add(request.getUrl().toString());
+                }
+
+                try {
+                    return method.invoke(response, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            });
+        };
+
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult result = InternetAnalyzerClient.getFirstSuccessfulConfiguration(new String[]{slowUrl, fastUrl}, 1000, transport);
+
+        assertEquals(result.getFirstSuccessfulUrl(), fastUrl);
+        // the slow response was still being read when the fast one won, and was cut off rather than left running
+        assertTrue(disconnected.contains(slowUrl));
+    }
+
+    @Test(expected = IOException.class)
+    public void GetFirstSuccessfulConfigurationAllFailedTest() throws IOException {
+
+        stubFor(get(urlEqualTo("/missing/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        String failingUrl = "http://localhost:" + TestUtils.testPort + "/missing/config.txt";
+        InternetAnalyzerClient.getFirstSuccessfulConfiguration(new String[]{failingUrl, failingUrl}, 50);
+    }
+
+    @Test
+    public void ExecuteWithPostGzipUploadTest() throws JSONException, IOException, CertificateEncodingException {
+        String configContents = TestUtils.GetFileContents("/src/test/fixtures/goodLocalMultiEndpointConfig.txt");
+        stubFor(get(urlMatching(TestUtils.imgPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching("^/test/path/.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        final List<HttpRequest> postRequests = new ArrayList<>();
+        final IHttpTransport urlConnectionTransport = new UrlConnectionHttpTransport();
+        IHttpTransport recordingTransport = request -> {
+            if (request.getMethod().equals("POST")) {
+                postRequests.add(request);
+            }
+            return urlConnectionTransport.send(request);
+        };
+
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult uploadResult = InternetAnalyzerClient.execute("INTERNET-ANALYZER-TEST", "tag-test", configContents, reportUploadUrlScheme, recordingTransport, ReportUploadMode.POST_GZIP);
+
+        assertEquals(uploadResult.getResult(), TestUtils.reportSuccess);
+        assertTrue(uploadResult.getFirstSuccessfulUrl().startsWith("http://localhost:8090/report/r.gif?MonitorID=INTERNET-ANALYZER-TEST&rid="));
+        assertTrue(!uploadResult.getFirstSuccessfulUrl().contains("&DATA="));
+
+        assertEquals(postRequests.size(), 1);
+        assertEquals(postRequests.get(0).getHeaders().get("Content-Encoding"), "gzip");
+        JSONArray data = new JSONArray(new String(TestUtils.ReadAllBytes(new GZIPInputStream(new ByteArrayInputStream(postRequests.get(0).getBody()))), StandardCharsets.UTF_8));
+        assertEquals(data.length(), 6);
+        for (int i = 0; i < data.length(); i++) {
+            TestUtils.ValidateFetchReportItem(data.getJSONObject(i), null);
+        }
+        verify(0, getRequestedFor(urlMatching(TestUtils.reportUploadPattern)));
+    }
+
+    @Test
+    public void ExecuteWithPostDeflateUploadFallsBackToGetTest() throws JSONException, IOException, CertificateEncodingException {
+        String configContents = TestUtils.GetFileContents("/src/test/fixtures/goodLocalMultiEndpointConfig.txt");
+        stubFor(get(urlMatching(TestUtils.imgPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching("^/test/path/.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(405)));
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult uploadResult = InternetAnalyzerClient.execute("INTERNET-ANALYZER-TEST", "tag-test", configContents, reportUploadUrlScheme, new UrlConnectionHttpTransport(), ReportUploadMode.POST_DEFLATE);
+
+        assertEquals(uploadResult.getResult(), TestUtils.reportSuccess);
+        TestUtils.ValidateRawFetchReportUrl(uploadResult.getFirstSuccessfulUrl());
+
+        LoggedRequest upload = findAll(postRequestedFor(urlMatching(TestUtils.reportUploadPattern))).get(0);
+        assertEquals(upload.getHeader("Content-Encoding"), "deflate");
+        JSONArray data = new JSONArray(new String(TestUtils.ReadAllBytes(new InflaterInputStream(new ByteArrayInputStream(upload.getBody()))), StandardCharsets.UTF_8));
+        assertEquals(data.length(), 6);
+
+        // the GET fallback reports under the same report id
+        String postRid = upload.getUrl().split("&rid=")[1].split("&")[0];
+        assertTrue(uploadResult.getFirstSuccessfulUrl().contains("&rid=" + postRid + "&"));
+    }
+
+    @Test
+    public void ClientInstanceExecuteTest() throws Exception {
+        String localConfigPath = "/src/test/fixtures/goodLocalMultiEndpointConfig.txt";
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Cache-Control", "max-age=600")
+                        .withBody(TestUtils.GetFileContents(localConfigPath))));
+        stubFor(get(urlMatching(TestUtils.imgPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching("^/test/path/.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        InternetAnalyzerClient client = InternetAnalyzerClient.builder()
+                .configUrls("http://localhost:" + TestUtils.testPort + localConfigPath)
+                .reportUploadPrefix(reportUploadUrlScheme)
+                .build();
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult uploadResult = client.execute("INTERNET-ANALYZER-TEST", "tag-test");
+        assertEquals(uploadResult.getResult(), TestUtils.reportSuccess);
+        TestUtils.ValidateRawFetchReportUrl(uploadResult.getFirstSuccessfulUrl());
+
+        uploadResult = client.execute("INTERNET-ANALYZER-TEST", "tag-test");
+        assertEquals(uploadResult.getResult(), TestUtils.reportSuccess);
+
+        // the second run was served from the client's configuration cache
+        verify(1, getRequestedFor(urlEqualTo(localConfigPath)));
+    }
+
+    @Test
+    public void ClientMetricsListenerTest() throws Exception {
+        String localConfigPath = "/src/test/fixtures/goodLocalMultiEndpointConfig.txt";
+        stubFor(get(urlEqualTo("/unavailable/config.txt"))
+                .willReturn(aResponse()
+                        .withStatus(503)));
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.GetFileContents(localConfigPath))));
+        stubFor(get(urlMatching(TestUtils.imgPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching("^/test/path/.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(405)));
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        List<String> events = new ArrayList<String>();
+        IMetricsListener metricsListener = new IMetricsListener() {
+            @Override
+            public void onConfigurationLoaded(String configUrl, long durationNanos, boolean success) {
+                events.add("config " + success);
+            }
+
+            @Override
+            public void onMeasurementTaken(int measurementType, String host, String connectionType, int statusCode, FetchPhaseTimings phaseTimings, long durationNanos, long bytesReceived, int redirects, boolean success) {
+                assertTrue(durationNanos > 0);
+                events.add("fetch " + connectionType + " " + statusCode + " " + redirects + " " + success);
+            }
+
+            @Override
+            public void onReportFormatted(int reportItemCount, long reportBytes, long durationNanos) {
+                assertTrue(reportBytes > 0);
+                events.add("format " + reportItemCount);
+            }
+
+            @Override
+            public void onReportUploaded(String uploadUrl, ReportUploadMode reportUploadMode, int statusCode, long bytesSent, long durationNanos, boolean success) {
+                events.add("upload " + reportUploadMode + " " + statusCode + " " + success);
+            }
+
+            @Override
+            public void onRetry(String failedUrl, IOException cause) {
+                events.add("retry " + failedUrl.substring(failedUrl.indexOf(TestUtils.testPort + "/")));
+            }
+        };
+
+        InternetAnalyzerClient client = InternetAnalyzerClient.builder()
+                .configUrls("http://localhost:" + TestUtils.testPort + "/unavailable/config.txt", "http://localhost:" + TestUtils.testPort + localConfigPath)
+                .reportUploadPrefix(reportUploadUrlScheme)
+                .httpTransport(new UrlConnectionHttpTransport())
+                .reportUploadMode(ReportUploadMode.POST_GZIP)
+                .metricsListener(metricsListener)
+                .build();
+        client.execute("INTERNET-ANALYZER-TEST", "tag-test");
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("config false");
+        expected.add("retry " + TestUtils.testPort + "/unavailable/config.txt");
+        expected.add("config true");
+        for (int i = 0; i < 3; i++) {
+            expected.add("fetch cold 200 0 true");
+            expected.add("fetch warm 200 0 true");
+        }
+        expected.add("format 6");
+        expected.add("upload POST_GZIP 405 false");
+        expected.add("format 6");
+        expected.add("upload GET 200 true");
+        assertEquals(expected, events);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ClientBuilderRequiresConfigUrlsTest() {
+        InternetAnalyzerClient.builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ClientBuilderRequiresPositiveConcurrencyTest() {
+        InternetAnalyzerClient.builder().configUrls("http://localhost:" + TestUtils.testPort + "/config").measurementConcurrency(0).build();
+    }
+
+    @Test
+    public void ClientConcurrentMeasurementsTest() throws Exception {
+        String localConfigPath = "/src/test/fixtures/goodLocalMultiEndpointConfig.txt";
+        stubFor(get(urlEqualTo(localConfigPath))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.GetFileContents(localConfigPath))));
+        stubFor(get(urlMatching(TestUtils.imgPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching("^/test/path/.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        InternetAnalyzerClient client = InternetAnalyzerClient.builder()
+                .configUrls("http://localhost:" + TestUtils.testPort + localConfigPath)
+                .reportUploadPrefix(reportUploadUrlScheme)
+                .measurementConcurrency(3)
+                .build();
+        InternetAnalyzerClient.firstSuccessfulHttpGetResult uploadResult = client.execute("INTERNET-ANALYZER-TEST", "tag-test");
+        assertEquals(uploadResult.getResult(), TestUtils.reportSuccess);
+        TestUtils.ValidateRawFetchReportUrl(uploadResult.getFirstSuccessfulUrl());
+    }
+}
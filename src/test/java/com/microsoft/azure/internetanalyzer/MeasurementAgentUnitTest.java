@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
@@ -26,6 +27,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 public class MeasurementAgentUnitTest {
@@ -208,4 +210,106 @@ public class MeasurementAgentUnitTest {
         }
 
     }
+
+    @Test
+    public void PerformMeasurementsConcurrentlyTest() throws JSONException, IOException, CertificateEncodingException {
+        String localConfigPath = "/src/test/fixtures/goodLocalMultiEndpointConfig.txt";
+        String configContents = TestUtils.GetFileContents(localConfigPath);
+
+        stubFor(get(urlMatching("^.*\\.gif\\?.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("")));
+
+        int expectedReportItemCount = 6; // cold and warm measurement for each of the 3 endpoints
+        MeasurementAgent measurementAgent = new MeasurementAgent(new JSONObject(configContents));
+        measurementAgent.PerformMeasurements(3);
+        List<IReportItem> reportItems = measurementAgent.getReportItems();
+        assertEquals(reportItems.size(), expectedReportItemCount);
+
+        for (IReportItem reportItem : reportItems) {
+            TestUtils.ValidateReportItem(reportItem.getFormattedReportItem());
+            assertTrue(reportItem.getFormattedReportItem().getLong("Result") >= 0);
+        }
+    }
+
+    @Test
+    public void PerformMeasurementsSharedConfigurationTest() throws JSONException, IOException, CertificateEncodingException {
+        String localConfigPath = "/src/test/fixtures/goodLocalMultiEndpointConfig.txt";
+        MeasurementConfiguration configuration = MeasurementConfiguration.parse(TestUtils.GetFileContents(localConfigPath));
+
+        stubFor(get(urlMatching("^.*\\.gif\\?.*$"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("")));
+
+        MeasurementAgent firstAgent = new MeasurementAgent(configuration);
+        MeasurementAgent secondAgent = new MeasurementAgent(configuration);
+        firstAgent.PerformMeasurements();
+        secondAgent.PerformMeasurements();
+
+        assertEquals(firstAgent.getReportItems().size(), 6);
+        assertEquals(secondAgent.getReportItems().size(), 6);
+        assertEquals(configuration.getMeasurementEndpoints().size(), 3);
+    }
+
+    @Test
+    public void MeasurementConfigurationUploadEndpointsCopyTest() throws IOException, JSONException {
+        String localConfigPath = "/src/test/fixtures/goodSimpleConfig.txt";
+        MeasurementConfiguration configuration = MeasurementConfiguration.parse(TestUtils.GetFileContents(localConfigPath));
+
+        configuration.getUploadEndpoints().put("localhost:8090/other/r.gif");
+
+        assertEquals(configuration.getUploadEndpoints().length(), 2);
+        assertEquals(configuration.getTotalWeight(), configuration.getMeasurementEndpoints().get(0).getWeight());
+    }
+
+    @Test
+    public void SelectSkipsTracerouteOnlyEndpointsWithoutProbeTest() throws JSONException {
+        MeasurementConfiguration configuration = MeasurementConfiguration.parse("{\"n\":1,\"r\":[],\"e\":["
+                + "{\"m\":32,\"w\":1000,\"e\":\"trace.endpoint\"},"
+                + "{\"m\":34,\"w\":1000,\"e\":\"trace-and-fetch.endpoint\"},"
+                + "{\"m\":2,\"w\":1,\"e\":\"localhost:8090\"}]}");
+        assertEquals(configuration.getMeasurementEndpoints().size(), 3);
+
+        // without a probe the traceroute-only endpoint never takes the slot, the one that also fetches still can
+        MeasurementAgent agent = new MeasurementAgent(configuration, new MeasurementContext(), new Random(1));
+        for (int i = 0; i < 50; i++) {
+            assertNotSame(agent.selectMeasurementEndpoints().get(0), configuration.getMeasurementEndpoints().get(0));
+        }
+
+        MeasurementContext probeContext = new MeasurementContext();
+        probeContext.setTracerouteProbe((destination, ttl, timeoutMillis) -> new ITracerouteProbe.Hop(ttl, "", -1, false));
+        MeasurementAgent probeAgent = new MeasurementAgent(configuration, probeContext, new Random(1));
+        boolean tracerouteSelected = false;
+        for (int i = 0; i < 50 && !tracerouteSelected; i++) {
+            tracerouteSelected = probeAgent.selectMeasurementEndpoints().get(0) == configuration.getMeasurementEndpoints().get(0);
+        }
+        assertTrue(tracerouteSelected);
+
+        // asking for more endpoints than can be measured measures nothing, as for unsupported types
+        MeasurementConfiguration allSlots = MeasurementConfiguration.parse("{\"n\":3,\"r\":[],\"e\":["
+                + "{\"m\":32,\"w\":1,\"e\":\"trace.endpoint\"},"
+                + "{\"m\":2,\"w\":1,\"e\":\"a.endpoint\"},"
+                + "{\"m\":2,\"w\":1,\"e\":\"b.endpoint\"}]}");
+        assertEquals(new MeasurementAgent(allSlots).selectMeasurementEndpoints().size(), 0);
+        assertEquals(new MeasurementAgent(allSlots, probeContext).selectMeasurementEndpoints().size(), 3);
+    }
+
+    @Test
+    public void MeasurementConfigurationDropsThroughputWithoutObjectTest() throws JSONException {
+        MeasurementConfiguration configuration = MeasurementConfiguration.parse("{\"n\":1,\"r\":[],\"e\":["
+                + "{\"m\":16,\"w\":1000,\"e\":\"throughput.endpoint\"},"
+                + "{\"m\":16,\"w\":1,\"e\":\"large.endpoint\",\"o\":\"/apc/large.bin\"},"
+                + "{\"m\":18,\"w\":1,\"e\":\"localhost:8090\"}]}");
+
+        // the throughput-only endpoint without an object could never be measured, so it does not take the slot
+        assertEquals(configuration.getMeasurementEndpoints().size(), 2);
+        assertEquals(configuration.getTotalWeight(), 2);
+    }
+
+    @Test(expected = JSONException.class)
+    public void MeasurementConfigurationNegativeWeightTest() throws JSONException {
+        MeasurementConfiguration.parse("{\"n\":1,\"r\":[],\"e\":[{\"m\":1,\"w\":-1,\"e\":\"localhost:8090\"}]}");
+    }
 }
@@ -0,0 +1,202 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProbeTrainMeasurementUnitTest {
+
+    private final List<Closeable> echoServers = new ArrayList<Closeable>();
+
+    @After
+    public void stopEchoServers() throws IOException {
+        for (Closeable echoServer : echoServers) {
+            echoServer.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ProbeTrainRequiresProbeHeaderTest() {
+        new ProbeTrainMeasurement("localhost", MeasurementTypes.JITTER, "", new MeasurementContext(), 10, 5, 8, 100);
+    }
+
+    @Test
+    public void ProbeTrainUdpEchoTest() throws IOException, CertificateEncodingException, JSONException {
+        int port = startUdpEcho(0);
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ProbeTrainMeasurement("127.0.0.1:" + port, MeasurementTypes.JITTER | MeasurementTypes.PACKET_LOSS, "ex1", new MeasurementContext(), 20, 2, 64, 1000).takeAndReportMeasurements(reportItems);
+
+        ProbeTrainReportItem reportItem = (ProbeTrainReportItem) reportItems.get(0);
+        assertEquals(reportItem.getTransport(), "udp");
+        assertEquals(reportItem.getSent(), 20);
+        assertEquals(reportItem.getReceived(), 20);
+        assertEquals(reportItem.getLossPercent(), 0, 0);
+        assertTrue(reportItem.getJitterNanos() >= 0);
+
+        JSONObject formatted = reportItem.getFormattedReportItem();
+        assertEquals(formatted.getString("RequestID"), "127.0.0.1:" + port);
+        assertEquals(formatted.getString("Ex"), "ex1");
+        assertEquals(formatted.getInt("T"), MeasurementTypes.JITTER | MeasurementTypes.PACKET_LOSS);
+        assertTrue(formatted.getLong("Result") >= 0);
+    }
+
+    @Test
+    public void ProbeTrainPacketLossTest() throws IOException, CertificateEncodingException {
+        int port = startUdpEcho(4);
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ProbeTrainMeasurement("127.0.0.1:" + port, MeasurementTypes.PACKET_LOSS, "", new MeasurementContext(), 20, 2, 64, 200).takeAndReportMeasurements(reportItems);
+
+        ProbeTrainReportItem reportItem = (ProbeTrainReportItem) reportItems.get(0);
+        assertEquals(reportItem.getReceived(), 15);
+        assertEquals(reportItem.getLossPercent(), 25, 0);
+    }
+
+    @Test
+    public void ProbeTrainTcpFallbackTest() throws IOException, CertificateEncodingException {
+        // nothing listens for UDP on the port, so the UDP probes are refused
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        echoServers.add(serverSocket);
+        startDaemon(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException ex) {
+                // closed by the test
+            }
+        });
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ProbeTrainMeasurement("127.0.0.1:" + serverSocket.getLocalPort(), MeasurementTypes.JITTER, "", new MeasurementContext(), 10, 2, 64, 200).takeAndReportMeasurements(reportItems);
+
+        ProbeTrainReportItem reportItem = (ProbeTrainReportItem) reportItems.get(0);
+        assertEquals(reportItem.getTransport(), "tcp");
+        assertEquals(reportItem.getReceived(), 10);
+    }
+
+    @Test
+    public void ProbeTrainResolvesThroughContextTest() throws IOException, CertificateEncodingException {
+        int port = startUdpEcho(0);
+        List<String> resolved = new ArrayList<String>();
+        MeasurementContext context = new MeasurementContext();
+        context.setDnsResolver(host -> {
+            resolved.add(host);
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        });
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ProbeTrainMeasurement("echo.test.endpoint:" + port, MeasurementTypes.JITTER, "", context, 5, 1, 64, 1000).takeAndReportMeasurements(reportItems);
+
+        assertEquals(resolved.size(), 1);
+        assertEquals(resolved.get(0), "echo.test.endpoint");
+        assertEquals(((ProbeTrainReportItem) reportItems.get(0)).getReceived(), 5);
+    }
+
+    @Test
+    public void ProbeTrainUnresolvedEndpointTest() throws IOException, CertificateEncodingException, JSONException {
+        MeasurementContext context = new MeasurementContext();
+        context.setDnsResolver(host -> {
+            throw new UnknownHostException(host);
+        });
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ProbeTrainMeasurement("unknown.test.endpoint", MeasurementTypes.JITTER, "", context, 5, 1, 64, 100).takeAndReportMeasurements(reportItems);
+
+        ProbeTrainReportItem reportItem = (ProbeTrainReportItem) reportItems.get(0);
+        assertEquals(reportItem.getSent(), 0);
+        assertEquals(reportItem.getFormattedReportItem().getLong("Result"), -1);
+    }
+
+    @Test
+    public void ProbeTrainUnreachableEndpointTest() throws IOException, CertificateEncodingException, JSONException {
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ProbeTrainMeasurement("127.0.0.1:1", MeasurementTypes.JITTER, "", new MeasurementContext(), 5, 1, 64, 100).takeAndReportMeasurements(reportItems);
+
+        JSONObject formatted = reportItems.get(0).getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), -1);
+        assertEquals(formatted.getDouble("Loss"), 100, 0);
+    }
+
+    @Test
+    public void ProbeTrainJitterTest() {
+        ProbeTrainReportItem reportItem = new ProbeTrainReportItem("test.endpoint", "", MeasurementTypes.JITTER, 8);
+        reportItem.setSent(5);
+        long[] rttMillis = {10, 12, 10, 12};
+        for (int i = 0; i < rttMillis.length; i++) {
+            reportItem.addReply(i, TimeUnit.MILLISECONDS.toNanos(rttMillis[i]));
+        }
+        // duplicates and unknown sequence numbers are ignored
+        reportItem.addReply(3, TimeUnit.MILLISECONDS.toNanos(50));
+        reportItem.addReply(8, TimeUnit.MILLISECONDS.toNanos(50));
+        reportItem.addReply(64, TimeUnit.MILLISECONDS.toNanos(50));
+
+        // J = 2/16, then J += (2 - J)/16 twice
+        assertEquals(reportItem.getJitterNanos(), 352051);
+        assertEquals(reportItem.getReceived(), 4);
+        assertEquals(reportItem.getLossPercent(), 20, 0);
+        assertEquals(reportItem.getTransport(), "");
+    }
+
+    /*
+     * Echoes every datagram except every dropEvery-th probe, by sequence number; 0 drops none.
+     */
+    private int startUdpEcho(int dropEvery) throws IOException {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        echoServers.add(socket);
+        startDaemon(() -> {
+            byte[] buffer = new byte[2048];
+            try {
+                while (true) {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(packet);
+                    int sequence = ByteBuffer.wrap(buffer).getInt();
+                    if (dropEvery == 0 || (sequence + 1) % dropEvery != 0) {
+                        socket.send(packet);
+                    }
+                }
+            } catch (IOException ex) {
+                // closed by the test
+            }
+        });
+        return socket.getLocalPort();
+    }
+
+    private static void startDaemon(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
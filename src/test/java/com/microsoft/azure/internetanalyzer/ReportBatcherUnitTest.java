@@ -0,0 +1,162 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReportBatcherUnitTest {
+
+    private static final JSONArray uploadEndpoints = new JSONArray(Arrays.asList("localhost:8090/report/r.gif"));
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(TestUtils.testPort);
+
+    @Test
+    public void offerUploadsOneReportWhenBatchIsFull() throws InterruptedException, IOException, JSONException {
+        List<HttpRequest> uploads = new ArrayList<>();
+        try (ReportBatcher batcher = new ReportBatcher(recordingTransport(uploads), "http://", ReportUploadMode.POST_GZIP, 6, TimeUnit.MINUTES.toMillis(10), 12)) {
+            for (int i = 0; i < 3; i++) {
+                batcher.offer("INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, newReportItems(2));
+            }
+
+            waitForUploads(batcher, 1);
+        }
+
+        assertEquals(uploads.size(), 1);
+        assertEquals(uploadedData(uploads.get(0)).length(), 6);
+    }
+
+    @Test
+    public void offerPostsLargeBatchAsOneReport() throws InterruptedException, IOException, JSONException {
+        List<HttpRequest> uploads = new ArrayList<>();
+        try (ReportBatcher batcher = new ReportBatcher(recordingTransport(uploads), "http://")) {
+            for (int i = 0; i < 10; i++) {
+                batcher.offer("INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, newReportItems(50));
+            }
+
+            waitForUploads(batcher, 1);
+        }
+
+        // the default batch of 500 items goes out in a single compressed POST
+        assertEquals(uploads.size(), 1);
+        assertEquals(uploads.get(0).getHeaders().get("Content-Encoding"), "gzip");
+        assertEquals(uploadedData(uploads.get(0)).length(), 500);
+        verify(0, getRequestedFor(urlMatching(TestUtils.reportUploadPattern)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batcherRequiresPostUploadMode() {
+        new ReportBatcher(new UrlConnectionHttpTransport(), "http://", ReportUploadMode.GET);
+    }
+
+    @Test
+    public void offerUploadsPartialBatchAfterDelay() throws InterruptedException, IOException {
+        stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        try (ReportBatcher batcher = new ReportBatcher(new UrlConnectionHttpTransport(), "http://", ReportUploadMode.POST_GZIP, 100, 50, 100)) {
+            batcher.offer("INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, newReportItems(2));
+            batcher.offer("INTERNET-ANALYZER-OTHER", "tag-test", uploadEndpoints, newReportItems(1));
+
+            waitForUploads(batcher, 2);
+            assertEquals(batcher.getPendingItemCount(), 0);
+        }
+
+        assertEquals(findAll(postRequestedFor(urlMatching(TestUtils.reportUploadPattern))).size(), 2);
+    }
+
+    @Test
+    public void offerWaitsWhileBatcherIsFull() throws InterruptedException, IOException {
+        final CountDownLatch releaseUpload = new CountDownLatch(1);
+        IHttpTransport blockedTransport = request -> {
+            try {
+                releaseUpload.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("collector unavailable");
+        };
+
+        try (ReportBatcher batcher = new ReportBatcher(blockedTransport, "http://", ReportUploadMode.POST_GZIP, 2, TimeUnit.MINUTES.toMillis(10), 2)) {
+            assertTrue(batcher.offer("INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, newReportItems(2), 1, TimeUnit.SECONDS));
+            assertFalse(batcher.offer("INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, newReportItems(1), 100, TimeUnit.MILLISECONDS));
+
+            releaseUpload.countDown();
+            assertTrue(batcher.offer("INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, newReportItems(1), 5, TimeUnit.SECONDS));
+            assertEquals(batcher.getFailedReportCount(), 1);
+        }
+    }
+
+    private static IHttpTransport recordingTransport(List<HttpRequest> uploads) {
+        stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+
+        final IHttpTransport urlConnectionTransport = new UrlConnectionHttpTransport();
+        return request -> {
+            if (request.getMethod().equals("POST")) {
+                synchronized (uploads) {
+                    uploads.add(request);
+                }
+            }
+            return urlConnectionTransport.send(request);
+        };
+    }
+
+    private static JSONArray uploadedData(HttpRequest upload) throws IOException, JSONException {
+        return new JSONArray(new String(TestUtils.ReadAllBytes(new GZIPInputStream(new ByteArrayInputStream(upload.getBody()))), StandardCharsets.UTF_8));
+    }
+
+    private static List<IReportItem> newReportItems(int count) {
+        List<IReportItem> reportItems = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            FetchReportItem reportItem = new FetchReportItem();
+            reportItem.addMeasurementProperties("id" + i, 10 + i, MeasurementTypes.HTTP, "cold", "http://localhost:8090/apc/trans.gif", "");
+            reportItems.add(reportItem);
+        }
+        return reportItems;
+    }
+
+    private static void waitForUploads(ReportBatcher batcher, int expectedUploads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (batcher.getUploadedReportCount() < expectedUploads && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(batcher.getUploadedReportCount(), expectedUploads);
+    }
+}
@@ -0,0 +1,272 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import org.json.JSONArray;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReportJournalUnitTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(TestUtils.testPort);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void appendKeepsRecordsAcrossReopen() throws IOException {
+        File path = temporaryFolder.newFile("reports.journal");
+        try (ReportJournal journal = new ReportJournal(path, 1024)) {
+            assertTrue(journal.append(bytes("first")));
+            assertTrue(journal.append(bytes("second")));
+        }
+
+        try (ReportJournal journal = new ReportJournal(path, 4096)) {
+            assertEquals(journal.getCapacity(), 1024);
+            assertEquals(drain(journal), Arrays.asList("first", "second"));
+            assertNull(journal.peekOldest());
+        }
+    }
+
+    @Test
+    public void appendEvictsOldestRecordsWhenFull() throws IOException {
+        try (ReportJournal journal = new ReportJournal(temporaryFolder.newFile("reports.journal"), 100)) {
+            // 12 byte framing + 20 byte payload, three records fit and every following one evicts the oldest
+            for (int i = 0; i < 10; i++) {
+                assertTrue(journal.append(bytes(String.format("record-%013d", i))));
+            }
+
+            assertEquals(drain(journal), Arrays.asList(
+                    String.format("record-%013d", 7), String.format("record-%013d", 8), String.format("record-%013d", 9)));
+            assertFalse(journal.append(new byte[100]));
+        }
+    }
+
+    @Test
+    public void openDropsTornRecord() throws IOException {
+        File path = temporaryFolder.newFile("reports.journal");
+        try (ReportJournal journal = new ReportJournal(path, 1024)) {
+            journal.append(bytes("intact"));
+            journal.append(bytes("torn"));
+        }
+
+        // flip a payload byte of the second record: 32 byte header, 12 + 6 byte first record, 12 byte framing
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.seek(32 + 18 + 12);
+            file.write('x');
+        }
+
+        try (ReportJournal journal = new ReportJournal(path, 1024)) {
+            assertEquals(drain(journal), Arrays.asList("intact"));
+            assertTrue(journal.append(bytes("next")));
+            assertEquals(journal.getRecordCount(), 1);
+        }
+    }
+
+    @Test
+    public void openAfterCrashDuringEvictionKeepsRemainingRecords() throws IOException {
+        File path = temporaryFolder.newFile("reports.journal");
+        try (ReportJournal journal = new ReportJournal(path, 100)) {
+            // 12 byte framing + 20 byte payload, the fourth record wraps to the start and evicts the first
+            for (int i = 0; i < 4; i++) {
+                assertTrue(journal.append(bytes(String.format("record-%013d", i))));
+            }
+        }
+
+        // a crash after the fourth record was written but before the final header update leaves the header with
+        // the first record evicted and the tail still behind the third: count at 12, head at 16, tail at 24
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.seek(12);
+            int count = file.readInt();
+            file.seek(12);
+            file.writeInt(count - 1);
+            file.seek(24);
+            file.writeLong(96);
+        }
+
+        try (ReportJournal journal = new ReportJournal(path, 100)) {
+            assertEquals(drain(journal), Arrays.asList(String.format("record-%013d", 1), String.format("record-%013d", 2)));
+            assertTrue(journal.append(bytes("next")));
+            assertEquals(journal.getRecordCount(), 1);
+        }
+    }
+
+    @Test
+    public void replayJournaledReportsUploadsFailedReport() throws IOException {
+        JSONArray uploadEndpoints = new JSONArray(Arrays.asList("localhost:8090/report/r.gif"));
+        FetchReportItem reportItem = new FetchReportItem();
+        reportItem.addMeasurementProperties("id", 10, MeasurementTypes.HTTP, "cold", "http://localhost:8090/apc/trans.gif", "");
+        List<IReportItem> reportItems = new ArrayList<>();
+        reportItems.add(reportItem);
+
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(503)));
+
+        try (ReportJournal journal = new ReportJournal(temporaryFolder.newFile("reports.journal"), 64 * 1024)) {
+            try {
+                InternetAnalyzerClient.uploadReport(reportItems, "INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, "http://", new UrlConnectionHttpTransport(), ReportUploadMode.GET, journal);
+            } catch (IOException expected) {
+                // every upload endpoint failed
+            }
+            assertEquals(journal.getRecordCount(), 1);
+
+            stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withBody(TestUtils.reportSuccess)));
+
+            assertEquals(InternetAnalyzerClient.replayJournaledReports(journal), 1);
+            assertEquals(journal.getRecordCount(), 0);
+        }
+
+        verify(2, getRequestedFor(urlMatching(TestUtils.reportUploadPattern)));
+    }
+
+    @Test
+    public void replayJournaledReportsReplaysPostAsPost() throws IOException {
+        JSONArray uploadEndpoints = new JSONArray(Arrays.asList("localhost:8090/report/r.gif"));
+        List<IReportItem> reportItems = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            FetchReportItem reportItem = new FetchReportItem();
+            reportItem.addMeasurementProperties("id" + i, 10, MeasurementTypes.HTTP, "cold", "http://localhost:8090/apc/trans.gif", "");
+            reportItems.add(reportItem);
+        }
+
+        stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(503)));
+
+        try (ReportJournal journal = new ReportJournal(temporaryFolder.newFile("reports.journal"), 64 * 1024)) {
+            try {
+                InternetAnalyzerClient.uploadReport(reportItems, "INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, "http://", new UrlConnectionHttpTransport(), ReportUploadMode.POST_GZIP, journal);
+            } catch (IOException expected) {
+                // every upload endpoint failed
+            }
+            assertEquals(journal.getRecordCount(), 1);
+
+            stubFor(post(urlMatching(TestUtils.reportUploadPattern))
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withBody(TestUtils.reportSuccess)));
+
+            assertEquals(InternetAnalyzerClient.replayJournaledReports(journal), 1);
+            assertEquals(journal.getRecordCount(), 0);
+        }
+
+        // the compressed batch is posted again, not turned into a GET query
+        verify(2, postRequestedFor(urlMatching(TestUtils.reportUploadPattern))
+                .withHeader("Content-Encoding", equalTo("gzip")));
+        verify(0, getRequestedFor(urlMatching(TestUtils.reportUploadPattern)));
+    }
+
+    @Test
+    public void replayJournaledReportsDropsRejectedReport() throws IOException {
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(TestUtils.reportSuccess)));
+        stubFor(get(urlMatching("^.*\\/report\\/r.gif\\?MonitorID=REJECTED.*$"))
+                .willReturn(aResponse()
+                        .withStatus(400)));
+
+        try (ReportJournal journal = new ReportJournal(temporaryFolder.newFile("reports.journal"), 64 * 1024)) {
+            journal.append(bytes("{\"p\":\"http://\",\"r\":[\"localhost:8090/report/r.gif\"],\"d\":\"MonitorID=REJECTED\"}"));
+            journal.append(bytes("{\"p\":\"http://\",\"r\":[\"localhost:8090/report/r.gif\"],\"d\":\"MonitorID=ACCEPTED\"}"));
+
+            // the rejected report does not hold back the one behind it
+            assertEquals(InternetAnalyzerClient.replayJournaledReports(journal), 1);
+            assertEquals(journal.getRecordCount(), 0);
+        }
+
+        verify(1, getRequestedFor(urlMatching("^.*MonitorID=ACCEPTED.*$")));
+    }
+
+    @Test
+    public void uploadReportDoesNotJournalRejectedReport() throws IOException {
+        JSONArray uploadEndpoints = new JSONArray(Arrays.asList("localhost:8090/report/r.gif"));
+        FetchReportItem reportItem = new FetchReportItem();
+        reportItem.addMeasurementProperties("id", 10, MeasurementTypes.HTTP, "cold", "http://localhost:8090/apc/trans.gif", "");
+        List<IReportItem> reportItems = new ArrayList<>();
+        reportItems.add(reportItem);
+
+        stubFor(get(urlMatching(TestUtils.reportUploadPattern))
+                .willReturn(aResponse()
+                        .withStatus(414)));
+
+        try (ReportJournal journal = new ReportJournal(temporaryFolder.newFile("reports.journal"), 64 * 1024)) {
+            try {
+                InternetAnalyzerClient.uploadReport(reportItems, "INTERNET-ANALYZER-TEST", "tag-test", uploadEndpoints, "http://", new UrlConnectionHttpTransport(), ReportUploadMode.GET, journal);
+                throw new AssertionError("expected an IOException");
+            } catch (IOException expected) {
+                // the collector rejected the report
+            }
+            assertEquals(journal.getRecordCount(), 0);
+        }
+    }
+
+    @Test
+    public void uploadReportWithoutEndpointsIsNotJournaled() throws IOException {
+        FetchReportItem reportItem = new FetchReportItem();
+        reportItem.addMeasurementProperties("id", 10, MeasurementTypes.HTTP, "cold", "http://localhost:8090/apc/trans.gif", "");
+        List<IReportItem> reportItems = new ArrayList<>();
+        reportItems.add(reportItem);
+
+        try (ReportJournal journal = new ReportJournal(temporaryFolder.newFile("reports.journal"), 64 * 1024)) {
+            for (ReportUploadMode reportUploadMode : ReportUploadMode.values()) {
+                try {
+                    InternetAnalyzerClient.uploadReport(reportItems, "INTERNET-ANALYZER-TEST", "tag-test", new JSONArray(), "http://", new UrlConnectionHttpTransport(), reportUploadMode, journal);
+                    throw new AssertionError("expected an IllegalArgumentException");
+                } catch (IllegalArgumentException ex) {
+                    assertEquals(ex.getMessage(), "At least one report upload endpoint is required.");
+                }
+            }
+            assertEquals(journal.getRecordCount(), 0);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> drain(ReportJournal journal) {
+        List<String> records = new ArrayList<>();
+        byte[] record;
+        while ((record = journal.peekOldest()) != null) {
+            records.add(new String(record, StandardCharsets.UTF_8));
+            journal.removeOldest();
+        }
+        return records;
+    }
+}
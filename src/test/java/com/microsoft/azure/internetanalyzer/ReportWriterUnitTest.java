@@ -0,0 +1,74 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReportWriterUnitTest {
+
+    private static final String awkwardText = "a b+c&d=e \"quoted\" back\\slash </tag> \t\n\u0001 \u0085   é 中 😀 ~!*'()";
+
+    @Test
+    public void valueQuotesLikeJsonObject() throws JSONException {
+        ReportWriter writer = new ReportWriter(false);
+        writer.value(awkwardText);
+
+        assertEquals(writer.toString(), JSONObject.quote(awkwardText));
+    }
+
+    @Test
+    public void appendTextEncodesLikeUrlEncoder() throws UnsupportedEncodingException {
+        ReportWriter writer = new ReportWriter(true);
+        writer.appendText(awkwardText);
+
+        assertEquals(writer.toString(), URLEncoder.encode(awkwardText, StandardCharsets.UTF_8.toString()));
+    }
+
+    @Test
+    public void urlEncodedObjectMatchesEncodedJson() throws JSONException, UnsupportedEncodingException {
+        ReportWriter writer = new ReportWriter(true, 16);
+        writer.beginArray();
+        writer.beginObject().field("S", awkwardText).field("L", -42L).field("B", true).field("D", 1.5).field("Z", 2.0).endObject();
+        writer.beginObject().endObject();
+        writer.endArray();
+
+        JSONArray decoded = new JSONArray(URLDecoder.decode(writer.toString(), StandardCharsets.UTF_8.toString()));
+        assertEquals(decoded.length(), 2);
+        assertEquals(decoded.getJSONObject(0).getString("S"), awkwardText);
+        assertEquals(decoded.getJSONObject(0).getLong("L"), -42L);
+        assertEquals(decoded.getJSONObject(0).getBoolean("B"), true);
+        assertEquals(decoded.getJSONObject(0).getDouble("D"), 1.5, 0);
+        assertEquals(decoded.getJSONObject(1).length(), 0);
+        assertTrue(URLDecoder.decode(writer.toString(), StandardCharsets.UTF_8.toString()).contains("\"Z\":2}"));
+    }
+
+    @Test
+    public void writeReportItemMatchesFormattedReportItem() throws JSONException {
+        FetchReportItem reportItem = new FetchReportItem();
+        reportItem.addMeasurementProperties("id", 12, 1, "cold", "https://localhost/apc/trans.gif", "ex");
+        reportItem.setBytesReceived(43);
+        reportItem.setConnectionReused(false);
+
+        ReportWriter writer = new ReportWriter(false);
+        writer.reset();
+        reportItem.writeReportItem(writer);
+
+        assertEquals(new JSONObject(writer.toString()).toString(), reportItem.getFormattedReportItem().toString());
+    }
+}
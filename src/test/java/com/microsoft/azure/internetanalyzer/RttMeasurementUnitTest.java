@@ -0,0 +1,102 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.request;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RttMeasurementUnitTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(TestUtils.testPort);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void RttMeasurementRequiresProbesTest() {
+        new RttMeasurement("localhost:" + TestUtils.testPort, "", "", new MeasurementContext(), false, 0);
+    }
+
+    @Test
+    public void RttProbesReuseOneConnectionTest() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(request("HEAD", urlEqualTo("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        RttMeasurement rttMeasurement = new RttMeasurement("localhost:" + TestUtils.testPort, "ex1", "", new MeasurementContext(new SocketHttpTransport()), false, 5);
+        rttMeasurement.takeAndReportMeasurements(reportItems);
+
+        // the connection opening probe is not a sample
+        verify(6, RequestPatternBuilder.newRequestPattern(RequestMethod.HEAD, urlEqualTo("/apc/trans.gif")));
+        assertEquals(reportItems.size(), 1);
+
+        RttReportItem reportItem = (RttReportItem) reportItems.get(0);
+        assertEquals(reportItem.getSamples(), 5);
+        assertTrue(reportItem.getMinNanos() > 0);
+        assertTrue(reportItem.getMinNanos() <= reportItem.getAverageNanos());
+        assertTrue(reportItem.getAverageNanos() <= reportItem.getMaxNanos());
+
+        JSONObject formatted = reportItem.getFormattedReportItem();
+        assertEquals(formatted.getString("RequestID"), "localhost:" + TestUtils.testPort);
+        assertEquals(formatted.getString("Object"), "trans.gif");
+        assertEquals(formatted.getString("Ex"), "ex1");
+        assertEquals(formatted.getInt("T"), MeasurementTypes.RTT);
+        assertEquals(formatted.getInt("Samples"), 5);
+        assertTrue(formatted.getLong("Result") >= 0);
+    }
+
+    @Test
+    public void RttUnreachableEndpointTest() throws IOException, CertificateEncodingException, JSONException {
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new RttMeasurement("localhost:1", "", "/apc/trans.gif", new MeasurementContext(new SocketHttpTransport()), false, 5).takeAndReportMeasurements(reportItems);
+
+        JSONObject formatted = reportItems.get(0).getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), -1);
+        assertEquals(formatted.getInt("Samples"), 0);
+        assertFalse(formatted.has("Min"));
+    }
+
+    @Test
+    public void RttReportItemStatisticsTest() throws JSONException {
+        RttReportItem reportItem = new RttReportItem("test.endpoint", "trans.gif", "");
+        for (int i = 1; i <= 4; i++) {
+            reportItem.addSample(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(reportItem.getMinNanos(), 1000000);
+        assertEquals(reportItem.getAverageNanos(), 2500000);
+        assertEquals(reportItem.getMaxNanos(), 4000000);
+        assertEquals(reportItem.getStandardDeviationNanos(), 1118034);
+
+        JSONObject formatted = reportItem.getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), 3);
+        assertEquals(formatted.getDouble("Avg"), 2.5, 0);
+        assertEquals(formatted.getDouble("Sd"), 1.118, 0);
+        assertFalse(formatted.has("Ex"));
+    }
+}
@@ -11,8 +11,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -39,6 +41,16 @@ public class TestUtils {
         return new String(Files.readAllBytes(Paths.get(fullFilePath)));
     }
 
+    public static byte[] ReadAllBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+        }
+        return out.toByteArray();
+    }
+
     public static void ValidateReportItem(JSONObject reportItem) throws JSONException {
         int measurementType = reportItem.getInt("T");
         assertNotNull(measurementType);
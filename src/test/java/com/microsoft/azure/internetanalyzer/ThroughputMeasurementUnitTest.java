@@ -0,0 +1,108 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThroughputMeasurementUnitTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(TestUtils.testPort);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ThroughputMeasurementRequiresThroughputTypeTest() {
+        new ThroughputMeasurement("localhost:" + TestUtils.testPort, MeasurementTypes.HTTPS, "", "", new MeasurementContext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ThroughputMeasurementRequiresObjectPathTest() {
+        new ThroughputMeasurement("localhost:" + TestUtils.testPort, MeasurementTypes.THROUGHPUT_HTTP, "", "", new MeasurementContext());
+    }
+
+    @Test
+    public void ThroughputSkippedWithoutObjectPathTest() throws IOException, CertificateEncodingException {
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new MeasurementEndpoint(1, "localhost:" + TestUtils.testPort, MeasurementTypes.THROUGHPUT_HTTP, "", "").takeAndReportMeasurements(reportItems);
+
+        assertEquals(reportItems.size(), 0);
+        verify(0, getRequestedFor(urlPathEqualTo("/apc/trans.gif")));
+    }
+
+    @Test
+    public void ThroughputParallelStreamsTest() throws IOException, CertificateEncodingException, JSONException {
+        byte[] body = new byte[1024 * 1024];
+        stubFor(get(urlPathEqualTo("/apc/large.bin"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(body)));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ThroughputMeasurement("localhost:" + TestUtils.testPort, MeasurementTypes.THROUGHPUT_HTTP, "ex1", "/apc/large.bin", new MeasurementContext(new SocketHttpTransport()), 2, 10, 10000).takeAndReportMeasurements(reportItems);
+
+        verify(2, getRequestedFor(urlPathEqualTo("/apc/large.bin")));
+        assertEquals(reportItems.size(), 1);
+
+        ThroughputReportItem reportItem = (ThroughputReportItem) reportItems.get(0);
+        assertEquals(reportItem.getBytesReceived(), 2L * body.length);
+        assertEquals(reportItem.getStreams(), 2);
+        assertTrue(reportItem.getMbps() > 0);
+        assertTrue(reportItem.getSteadyStateMbps() > 0);
+        assertTrue(reportItem.getSlowStartNanos() >= 0);
+
+        JSONObject formatted = reportItem.getFormattedReportItem();
+        assertEquals(formatted.getString("RequestID"), "localhost:" + TestUtils.testPort);
+        assertEquals(formatted.getString("Object"), "large.bin");
+        assertEquals(formatted.getString("Ex"), "ex1");
+        assertEquals(formatted.getInt("T"), MeasurementTypes.THROUGHPUT_HTTP);
+        assertEquals(formatted.getLong("Bytes"), 2L * body.length);
+        assertTrue(formatted.getLong("Result") >= 0);
+    }
+
+    @Test
+    public void ThroughputUnreachableEndpointTest() throws IOException, CertificateEncodingException, JSONException {
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new ThroughputMeasurement("localhost:1", MeasurementTypes.THROUGHPUT_HTTP, "", "/apc/large.bin", new MeasurementContext(new SocketHttpTransport()), 2, 10, 1000).takeAndReportMeasurements(reportItems);
+
+        JSONObject formatted = reportItems.get(0).getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), -1);
+        assertFalse(formatted.has("Bytes"));
+    }
+
+    @Test
+    public void FindSteadyStateStartTest() {
+        // 100ms samples ramping up to a steady 1000 bytes per interval
+        long[] nanos = {100000000L, 200000000L, 300000000L, 400000000L, 500000000L};
+        long[] cumulativeBytes = {100, 400, 1350, 2350, 3300};
+        assertEquals(ThroughputMeasurement.findSteadyStateStart(nanos, cumulativeBytes), 2);
+
+        ThroughputReportItem reportItem = new ThroughputReportItem("test.endpoint", "large.bin", "", MeasurementTypes.THROUGHPUT_HTTPS);
+        reportItem.setStreamMbps(new double[]{1, 3});
+        assertEquals(reportItem.getStreamStandardDeviationMbps(), 1, 0);
+        assertEquals(ThroughputReportItem.toMbps(125000, 1000000000L), 1, 0);
+    }
+}
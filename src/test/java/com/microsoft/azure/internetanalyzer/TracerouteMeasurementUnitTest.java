@@ -0,0 +1,113 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TracerouteMeasurementUnitTest {
+
+    /*
+     * A simulated route of four hops to 10.0.0.4 where the second hop never replies. Every probe takes 100ms, hop
+     * ttl answering with 10.0.0.ttl after ttl milliseconds of simulated round trip.
+     */
+    private static MeasurementContext simulatedNetwork(AtomicInteger probesSent) {
+        MeasurementContext context = new MeasurementContext();
+        context.setDnsResolver(host -> new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 0, 0, 4})});
+        context.setTracerouteProbe((destination, ttl, timeoutMillis) -> {
+            probesSent.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+
+            if (ttl == 2) {
+                return new ITracerouteProbe.Hop(ttl, "", -1, false);
+            }
+
+            int hop = Math.min(ttl, 4);
+            return new ITracerouteProbe.Hop(ttl, "10.0.0." + hop, TimeUnit.MILLISECONDS.toNanos(hop), hop == 4);
+        });
+        return context;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TracerouteRequiresTracerouteTypeTest() {
+        new TracerouteMeasurement("test.endpoint", MeasurementTypes.HTTPS, "", simulatedNetwork(new AtomicInteger()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TracerouteRequiresProbeTest() {
+        new TracerouteMeasurement("test.endpoint", MeasurementTypes.TRACERT4, "", new MeasurementContext());
+    }
+
+    @Test
+    public void TracerouteSkippedWithoutProbeTest() throws IOException, CertificateEncodingException {
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new MeasurementEndpoint(1, "test.endpoint", MeasurementTypes.TRACERT4 | MeasurementTypes.TRACERT6, "", "").takeAndReportMeasurements(reportItems, new MeasurementContext());
+
+        assertEquals(reportItems.size(), 0);
+    }
+
+    @Test
+    public void TracerouteParallelHopsTest() throws IOException, CertificateEncodingException, JSONException {
+        AtomicInteger probesSent = new AtomicInteger();
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+
+        long start = System.nanoTime();
+        new TracerouteMeasurement("test.endpoint", MeasurementTypes.TRACERT4, "ex1", simulatedNetwork(probesSent), 16, 500).takeAndReportMeasurements(reportItems);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // all 16 probes ran at once rather than one after the other
+        assertEquals(probesSent.get(), 16);
+        assertTrue(elapsedMillis < 800);
+
+        TracerouteReportItem reportItem = (TracerouteReportItem) reportItems.get(0);
+        assertTrue(reportItem.isDestinationReached());
+        assertEquals(reportItem.getDestination(), "10.0.0.4");
+        assertEquals(reportItem.getHops().size(), 4);
+        assertEquals(reportItem.getHops().get(1).getAddress(), "");
+
+        JSONObject formatted = reportItem.getFormattedReportItem();
+        assertEquals(formatted.getString("RequestID"), "test.endpoint");
+        assertEquals(formatted.getString("Ex"), "ex1");
+        assertEquals(formatted.getInt("T"), MeasurementTypes.TRACERT4);
+        assertEquals(formatted.getLong("Result"), 4);
+        assertEquals(formatted.getInt("Hops"), 4);
+        assertEquals(formatted.getJSONArray("Ip").getString(2), "10.0.0.3");
+        assertEquals(formatted.getJSONArray("Rtt").getDouble(1), -1, 0);
+        assertEquals(formatted.getJSONArray("Rtt").getDouble(2), 3, 0);
+    }
+
+    @Test
+    public void TracerouteNoAddressOfFamilyTest() throws IOException, CertificateEncodingException, JSONException {
+        AtomicInteger probesSent = new AtomicInteger();
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new TracerouteMeasurement("test.endpoint", MeasurementTypes.TRACERT6, "", simulatedNetwork(probesSent), 8, 500).takeAndReportMeasurements(reportItems);
+
+        // the simulated endpoint has no IPv6 address
+        assertEquals(probesSent.get(), 0);
+        JSONObject formatted = reportItems.get(0).getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), -1);
+        assertFalse(formatted.has("Dst"));
+    }
+}
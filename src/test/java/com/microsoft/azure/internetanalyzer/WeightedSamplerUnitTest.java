@@ -0,0 +1,69 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedSamplerUnitTest {
+
+    @Test
+    public void nextDrawsEveryWeightedIndexOnce() {
+        int[] cumulativeWeights = {5, 5, 12, 13, 40, 41, 50};
+        WeightedSampler sampler = new WeightedSampler(cumulativeWeights, new Random(7));
+
+        Set<Integer> drawn = new HashSet<>();
+        while (sampler.hasNext()) {
+            assertTrue(drawn.add(sampler.next()));
+        }
+
+        // index 1 has weight 0 and is never drawn
+        assertEquals(drawn.size(), 6);
+        assertFalse(drawn.contains(1));
+    }
+
+    @Test
+    public void nextIsReproducibleWithSeededRandom() {
+        int[] cumulativeWeights = {3, 10, 11, 30, 31};
+        WeightedSampler first = new WeightedSampler(cumulativeWeights, new Random(42));
+        WeightedSampler second = new WeightedSampler(cumulativeWeights, new Random(42));
+
+        while (first.hasNext()) {
+            assertEquals(first.next(), second.next());
+        }
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    public void nextFollowsWeights() {
+        int[] cumulativeWeights = {10, 100};
+        Random random = new Random(1);
+        int heavyFirst = 0;
+        int draws = 10000;
+        for (int i = 0; i < draws; i++) {
+            if (new WeightedSampler(cumulativeWeights, random).next() == 1) {
+                heavyFirst++;
+            }
+        }
+
+        // the weight 90 index should come first in about 90% of the draws
+        assertTrue(heavyFirst > draws * 0.87 && heavyFirst < draws * 0.93);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nextFailsWithoutWeight() {
+        new WeightedSampler(new int[0], new Random()).next();
+    }
+}
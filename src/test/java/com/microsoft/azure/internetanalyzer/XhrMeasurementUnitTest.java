@@ -0,0 +1,163 @@
+/*---------------------------------------------------------------------------------------------
+
+ *  Copyright (c) Microsoft Corporation. All rights reserved.
+
+ *  Licensed under the MIT License. See License.txt in the project root for license information.
+
+ *--------------------------------------------------------------------------------------------*/
+package com.microsoft.azure.internetanalyzer;
+
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.request;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XhrMeasurementUnitTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(TestUtils.testPort);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void XhrMeasurementRequiresXhrTypeTest() {
+        new XhrMeasurement("localhost:" + TestUtils.testPort, MeasurementTypes.HTTP, "", "", new MeasurementContext());
+    }
+
+    @Test
+    public void XhrPreflightThenGetTest() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(request("OPTIONS", urlEqualTo("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(204)
+                        .withHeader("Access-Control-Allow-Origin", XhrMeasurement.defaultOrigin)
+                        .withHeader("Access-Control-Allow-Headers", "x-requested-with")));
+        stubFor(get(urlEqualTo("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Access-Control-Allow-Origin", XhrMeasurement.defaultOrigin)
+                        .withBody("GIF89a")));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new XhrMeasurement("localhost:" + TestUtils.testPort, MeasurementTypes.XHRHTTP, "ex1", "", new MeasurementContext(new SocketHttpTransport())).takeAndReportMeasurements(reportItems);
+
+        verify(1, RequestPatternBuilder.newRequestPattern(RequestMethod.OPTIONS, urlEqualTo("/apc/trans.gif"))
+                .withHeader("Origin", equalTo(XhrMeasurement.defaultOrigin))
+                .withHeader("Access-Control-Request-Method", equalTo("GET")));
+        verify(1, getRequestedFor(urlEqualTo("/apc/trans.gif"))
+                .withHeader("X-Requested-With", equalTo("XMLHttpRequest")));
+
+        XhrReportItem reportItem = (XhrReportItem) reportItems.get(0);
+        assertTrue(reportItem.isCorsAllowed());
+        assertEquals(reportItem.getPreflightStatus(), 204);
+        assertTrue(reportItem.getPreflightNanos() > 0);
+        assertTrue(reportItem.getRequestNanos() > 0);
+
+        JSONObject formatted = reportItem.getFormattedReportItem();
+        assertEquals(formatted.getString("RequestID"), "localhost:" + TestUtils.testPort);
+        assertEquals(formatted.getString("Object"), "trans.gif");
+        assertEquals(formatted.getString("Ex"), "ex1");
+        assertEquals(formatted.getInt("T"), MeasurementTypes.XHRHTTP);
+        assertTrue(formatted.getLong("Result") >= 0);
+        assertTrue(formatted.getLong("Preflight") >= 0);
+        assertTrue(formatted.has("Tcp"));
+    }
+
+    @Test
+    public void XhrOriginFromContextTest() throws IOException, CertificateEncodingException, JSONException {
+        String origin = "https://portal.example.test";
+        stubFor(request("OPTIONS", urlEqualTo("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(204)
+                        .withHeader("Access-Control-Allow-Origin", origin)
+                        .withHeader("Access-Control-Allow-Headers", "x-requested-with")));
+        stubFor(get(urlEqualTo("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Access-Control-Allow-Origin", origin)
+                        .withBody("GIF89a")));
+
+        MeasurementContext context = new MeasurementContext(new SocketHttpTransport());
+        context.setXhrOrigin(origin);
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new MeasurementEndpoint(1, "localhost:" + TestUtils.testPort, MeasurementTypes.XHRHTTP, "", "").takeAndReportMeasurements(reportItems, context);
+
+        verify(1, RequestPatternBuilder.newRequestPattern(RequestMethod.OPTIONS, urlEqualTo("/apc/trans.gif"))
+                .withHeader("Origin", equalTo(origin)));
+        assertTrue(((XhrReportItem) reportItems.get(0)).isCorsAllowed());
+    }
+
+    @Test
+    public void XhrDefaultContextSendsCorsHeadersTest() throws IOException, CertificateEncodingException, JSONException {
+        stubFor(request("OPTIONS", urlEqualTo("/apc/trans.gif"))
+                .withHeader("Origin", equalTo(XhrMeasurement.defaultOrigin))
+                .willReturn(aResponse()
+                        .withStatus(204)
+                        .withHeader("Access-Control-Allow-Origin", XhrMeasurement.defaultOrigin)
+                        .withHeader("Access-Control-Allow-Headers", "x-requested-with")));
+        stubFor(get(urlEqualTo("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Access-Control-Allow-Origin", XhrMeasurement.defaultOrigin)
+                        .withBody("GIF89a")));
+
+        // the default context uses HttpURLConnection, which would drop the Origin and Access-Control-Request-* headers
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new XhrMeasurement("localhost:" + TestUtils.testPort, MeasurementTypes.XHRHTTP, "", "", new MeasurementContext()).takeAndReportMeasurements(reportItems);
+
+        verify(1, RequestPatternBuilder.newRequestPattern(RequestMethod.OPTIONS, urlEqualTo("/apc/trans.gif"))
+                .withHeader("Origin", equalTo(XhrMeasurement.defaultOrigin))
+                .withHeader("Access-Control-Request-Method", equalTo("GET"))
+                .withHeader("Access-Control-Request-Headers", equalTo("x-requested-with")));
+        verify(1, getRequestedFor(urlEqualTo("/apc/trans.gif"))
+                .withHeader("Origin", equalTo(XhrMeasurement.defaultOrigin)));
+        assertTrue(((XhrReportItem) reportItems.get(0)).isCorsAllowed());
+    }
+
+    @Test
+    public void XhrPreflightRejectedTest() throws IOException, CertificateEncodingException, JSONException {
+        // no Access-Control-Allow-Origin, so a browser would not send the GET
+        stubFor(request("OPTIONS", urlEqualTo("/apc/trans.gif"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new XhrMeasurement("localhost:" + TestUtils.testPort, MeasurementTypes.XHRHTTP, "", "", new MeasurementContext(new SocketHttpTransport())).takeAndReportMeasurements(reportItems);
+
+        verify(0, getRequestedFor(urlEqualTo("/apc/trans.gif")));
+
+        JSONObject formatted = reportItems.get(0).getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), -1);
+        assertTrue(formatted.getLong("Preflight") >= 0);
+        assertFalse(formatted.getBoolean("Cors"));
+    }
+
+    @Test
+    public void XhrUnreachableEndpointTest() throws IOException, CertificateEncodingException, JSONException {
+        List<IReportItem> reportItems = new ArrayList<IReportItem>();
+        new XhrMeasurement("localhost:1", MeasurementTypes.XHRHTTP, "", "", new MeasurementContext(new SocketHttpTransport())).takeAndReportMeasurements(reportItems);
+
+        JSONObject formatted = reportItems.get(0).getFormattedReportItem();
+        assertEquals(formatted.getLong("Result"), -1);
+        assertEquals(formatted.getLong("Preflight"), -1);
+        assertFalse(formatted.has("Cors"));
+    }
+}